@@ -0,0 +1,735 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction hierarchy over a Graph, for shortest path queries that
+ * settle a few hundred vertices even on continental graphs.
+ *
+ * Preprocessing contracts vertices one at a time in order of
+ * importance. Contracting v removes it from the remaining graph and adds
+ * a shortcut u-w with weight w(u,v) + w(v,w) for each pair of remaining
+ * neighbors whose shortest connection runs through v, which a bounded
+ * witness search checks. The rank of a vertex is its position in the
+ * contraction order, and the hierarchy keeps, for every vertex, the
+ * arcs (original or shortcut) to higher ranked neighbors.
+ *
+ * A query runs Dijkstra upward from both ends and unpacks the shortcuts
+ * on the best meeting path back into original arcs, so routes are
+ * identical in length to those of plain Dijkstra.
+ *
+ * Usage: java ContractionHierarchy input.graph output.ch
+ */
+public class ContractionHierarchy {
+    public static final int MAGIC = 0x46484352; // "RCHF"
+    public static final int VERSION = 2;
+    private static final int HEADER_BYTES = 24;
+    // Witness searches give up after settling this many vertices, adding
+    // a possibly unnecessary shortcut rather than spending more time.
+    // Estimating priorities only needs a rough count, so uses a tighter limit.
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int ESTIMATE_SETTLE_LIMIT = 50;
+
+    private final int graphArcs;
+    private final int graphChecksum;
+    private final IntBuffer rank;
+    private final IntBuffer upOffsets;
+    private final IntBuffer upTargets;
+    private final DoubleBuffer upWeights;
+    private final IntBuffer upMiddles;
+    private final ThreadLocal<SearchState[]> states;
+
+    private ContractionHierarchy(int graphArcs, int graphChecksum, IntBuffer rank, IntBuffer upOffsets,
+            IntBuffer upTargets, DoubleBuffer upWeights, IntBuffer upMiddles) {
+        this.graphArcs = graphArcs;
+        this.graphChecksum = graphChecksum;
+        this.rank = rank;
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upWeights = upWeights;
+        this.upMiddles = upMiddles;
+        int n = rank.limit();
+        this.states = ThreadLocal.withInitial(() -> new SearchState[] {new SearchState(n), new SearchState(n)});
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java ContractionHierarchy input.graph output.ch");
+            System.exit(1);
+        }
+        Graph graph;
+        try (FileInputStream in = new FileInputStream(args[0])) {
+            FileChannel channel = in.getChannel();
+            graph = GraphSnapshot.isSnapshot(channel) ? GraphSnapshot.load(channel) : GraphParser.parse(in);
+        }
+        build(graph).write(Paths.get(args[1]));
+    }
+
+    /**
+     * @return the number of vertices in the hierarchy
+     */
+    public int size() {
+        return rank.limit();
+    }
+
+    /**
+     * @return the position of v in the contraction order
+     */
+    public int rank(int v) {
+        return rank.get(v);
+    }
+
+    /**
+     * @return the number of upward arcs, original and shortcut
+     */
+    public int upwardArcCount() {
+        return upTargets.limit();
+    }
+
+    public int firstUpArc(int v) {
+        return upOffsets.get(v);
+    }
+
+    public int endUpArc(int v) {
+        return upOffsets.get(v + 1);
+    }
+
+    public int upTarget(int a) {
+        return upTargets.get(a);
+    }
+
+    public double upWeight(int a) {
+        return upWeights.get(a);
+    }
+
+    /**
+     * @return the vertex a shortcut arc bypasses, or -1 for an original arc
+     */
+    public int upMiddle(int a) {
+        return upMiddles.get(a);
+    }
+
+    /**
+     * @return true if this hierarchy was built from graph, judging by
+     * its shape and Graph.checksum
+     */
+    public boolean matches(Graph graph) {
+        return graph.size() == size() && graph.arcCount() == graphArcs
+                && graph.checksum() == graphChecksum;
+    }
+
+    /**
+     * Contracts every vertex of graph, ordering vertices by edge
+     * difference (shortcuts added minus arcs removed) plus the number of
+     * already contracted neighbors, with priorities refreshed lazily.
+     * @param graph the graph to preprocess
+     * @return the hierarchy
+     */
+    public static ContractionHierarchy build(Graph graph) {
+        return new Builder(graph).build();
+    }
+
+    /**
+     * Finds a shortest path with a bidirectional upward search. Vertices
+     * reached suboptimally are stalled: if a higher ranked neighbor
+     * already offers a shorter distance, their arcs are not relaxed.
+     * @param source the id of the first vertex
+     * @param target the id of the last vertex
+     * @return the vertex ids of a shortest path [source, ..., target] in
+     * the original graph, or null if target is unreachable from source
+     */
+    public int[] shortestPath(int source, int target) {
+        SearchState[] pair = states.get();
+        SearchState forward = pair[0];
+        SearchState backward = pair[1];
+        int meet = search(source, target, forward, backward);
+        if (meet < 0) {
+            return null;
+        }
+
+        int[] head = forward.path(meet);
+        int[] tail = backward.path(meet);
+        IntList path = new IntList(head.length + tail.length);
+        path.add(source);
+        for (int i = 1; i < head.length; i++) {
+            unpack(head[i - 1], head[i], path);
+        }
+        for (int i = tail.length - 1; i > 0; i--) {
+            unpack(tail[i], tail[i - 1], path);
+        }
+        return path.toArray();
+    }
+
+    /**
+     * Computes the road distance from every source to every target with
+     * the bucket-based many-to-many algorithm. One upward search from
+     * each target leaves an entry (target, distance) in the bucket of
+     * every vertex it settles, then one upward search from each source
+     * scans the buckets of the vertices it settles, so the work is one
+     * small search per source and per target rather than one search per
+     * pair. Both phases run their searches in parallel.
+     * @param sources the ids of the source vertices
+     * @param targets the ids of the target vertices
+     * @return distances[i][j], the distance from sources[i] to targets[j],
+     * infinite where there is no path
+     */
+    public double[][] distanceMatrix(int[] sources, int[] targets) {
+        int[][] spaceVertices = new int[targets.length][];
+        double[][] spaceDistances = new double[targets.length][];
+        IntStream.range(0, targets.length).parallel().forEach(j -> {
+            SearchState state = states.get()[1];
+            IntList settled = upwardSearch(targets[j], state);
+            spaceVertices[j] = settled.toArray();
+            spaceDistances[j] = new double[settled.size()];
+            for (int i = 0; i < settled.size(); i++) {
+                spaceDistances[j][i] = state.distance(settled.values[i]);
+            }
+        });
+
+        int n = size();
+        int[] bucketOffsets = new int[n + 1];
+        for (int[] vertices : spaceVertices) {
+            for (int v : vertices) {
+                bucketOffsets[v + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        int[] bucketTargets = new int[bucketOffsets[n]];
+        double[] bucketDistances = new double[bucketOffsets[n]];
+        int[] next = Arrays.copyOf(bucketOffsets, n);
+        for (int j = 0; j < targets.length; j++) {
+            for (int i = 0; i < spaceVertices[j].length; i++) {
+                int at = next[spaceVertices[j][i]]++;
+                bucketTargets[at] = j;
+                bucketDistances[at] = spaceDistances[j][i];
+            }
+        }
+
+        double[][] distances = new double[sources.length][targets.length];
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            double[] row = distances[i];
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            SearchState state = states.get()[0];
+            IntList settled = upwardSearch(sources[i], state);
+            for (int k = 0; k < settled.size(); k++) {
+                int v = settled.values[k];
+                double base = state.distance(v);
+                for (int b = bucketOffsets[v]; b < bucketOffsets[v + 1]; b++) {
+                    double candidate = base + bucketDistances[b];
+                    if (candidate < row[bucketTargets[b]]) {
+                        row[bucketTargets[b]] = candidate;
+                    }
+                }
+            }
+        });
+        return distances;
+    }
+
+    /**
+     * @return the number of vertices settled by the last query on the
+     * calling thread
+     */
+    public int lastSettledCount() {
+        SearchState[] pair = states.get();
+        return pair[0].settledCount() + pair[1].settledCount();
+    }
+
+    /**
+     * @return the forward and backward search states of the last query on
+     * the calling thread, whose counters describe that query until the
+     * thread starts another one
+     */
+    SearchState[] lastStates() {
+        return states.get();
+    }
+
+    /**
+     * Runs the bidirectional upward search.
+     * @return the meeting vertex of the shortest path, or -1 if none
+     */
+    private int search(int source, int target, SearchState forward, SearchState backward) {
+        forward.reset();
+        backward.reset();
+        forward.update(source, 0.0, -1);
+        forward.heap().pushOrDecrease(source, 0.0);
+        backward.update(target, 0.0, -1);
+        backward.heap().pushOrDecrease(target, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (true) {
+            boolean forwardDone = forward.heap().isEmpty() || forward.heap().minKey() >= best;
+            boolean backwardDone = backward.heap().isEmpty() || backward.heap().minKey() >= best;
+            if (forwardDone && backwardDone) {
+                break;
+            }
+            boolean isForward = backwardDone
+                    || (!forwardDone && forward.heap().minKey() <= backward.heap().minKey());
+            SearchState state = isForward ? forward : backward;
+            SearchState other = isForward ? backward : forward;
+
+            int curr = state.heap().pop();
+            state.settle();
+            double base = state.distance(curr);
+            if (other.reached(curr) && base + other.distance(curr) < best) {
+                best = base + other.distance(curr);
+                meet = curr;
+            }
+            if (stalled(curr, base, state)) {
+                continue;
+            }
+            state.relax(endUpArc(curr) - firstUpArc(curr));
+            for (int a = firstUpArc(curr); a < endUpArc(curr); a++) {
+                int neighbor = upTarget(a);
+                double candidate = base + upWeight(a);
+                if (candidate < state.distance(neighbor)) {
+                    state.update(neighbor, candidate, curr);
+                    state.heap().pushOrDecrease(neighbor, candidate);
+                }
+            }
+        }
+        return meet;
+    }
+
+    /**
+     * Runs Dijkstra upward from source over its whole search space.
+     * Stalled vertices are left out of the result since their distances
+     * are not shortest ones.
+     * @return the settled, unstalled vertices, whose distances stay in
+     * state until its next reset
+     */
+    private IntList upwardSearch(int source, SearchState state) {
+        state.reset();
+        state.update(source, 0.0, -1);
+        state.heap().pushOrDecrease(source, 0.0);
+        IntList settled = new IntList(64);
+        while (!state.heap().isEmpty()) {
+            int curr = state.heap().pop();
+            state.settle();
+            double base = state.distance(curr);
+            if (stalled(curr, base, state)) {
+                continue;
+            }
+            settled.add(curr);
+            state.relax(endUpArc(curr) - firstUpArc(curr));
+            for (int a = firstUpArc(curr); a < endUpArc(curr); a++) {
+                int neighbor = upTarget(a);
+                double candidate = base + upWeight(a);
+                if (candidate < state.distance(neighbor)) {
+                    state.update(neighbor, candidate, curr);
+                    state.heap().pushOrDecrease(neighbor, candidate);
+                }
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * In an undirected hierarchy the arcs into v from higher ranked
+     * vertices are the reverses of v's upward arcs, so v can be stalled
+     * if one of its upward neighbors is already closer than v minus the
+     * arc between them.
+     */
+    private boolean stalled(int v, double distance, SearchState state) {
+        for (int a = firstUpArc(v); a < endUpArc(v); a++) {
+            int neighbor = upTarget(a);
+            if (state.distance(neighbor) + upWeight(a) < distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the original vertices of the hierarchy arc from u to w,
+     * excluding u, to path.
+     */
+    private void unpack(int u, int w, IntList path) {
+        IntList stack = new IntList(16);
+        stack.add(w);
+        stack.add(u);
+        while (stack.size() > 0) {
+            int from = stack.pop();
+            int to = stack.pop();
+            int middle = upMiddle(arcBetween(from, to));
+            if (middle < 0) {
+                path.add(to);
+            } else {
+                stack.add(to);
+                stack.add(middle);
+                stack.add(middle);
+                stack.add(from);
+            }
+        }
+    }
+
+    /**
+     * @return the upward arc joining u and w, held by the lower ranked one
+     */
+    private int arcBetween(int u, int w) {
+        int low = rank(u) < rank(w) ? u : w;
+        int high = low == u ? w : u;
+        for (int a = firstUpArc(low); a < endUpArc(low); a++) {
+            if (upTarget(a) == high) {
+                return a;
+            }
+        }
+        throw new IllegalStateException("No hierarchy arc between " + u + " and " + w);
+    }
+
+    /**
+     * Writes the hierarchy to file, replacing any existing file. The
+     * layout is a little-endian 24 byte header (magic, version, vertex
+     * count, upward arc count, arc count and checksum of the source graph)
+     * followed by upward weights as doubles, then rank, upward offsets,
+     * targets and middles as ints.
+     * @param file the destination
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        int n = size();
+        int arcs = upwardArcCount();
+        long size = HEADER_BYTES + 8L * arcs + 4L * (2L * n + 1 + 2L * arcs);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Hierarchy too large to write: " + size + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(arcs).putInt(graphArcs).putInt(graphChecksum);
+            out.asDoubleBuffer().put(upWeights.duplicate());
+            out.position(out.position() + 8 * arcs);
+            out.asIntBuffer().put(rank.duplicate());
+            out.position(out.position() + 4 * n);
+            out.asIntBuffer().put(upOffsets.duplicate());
+            out.position(out.position() + 4 * (n + 1));
+            out.asIntBuffer().put(upTargets.duplicate());
+            out.position(out.position() + 4 * arcs);
+            out.asIntBuffer().put(upMiddles.duplicate());
+            out.force();
+        }
+    }
+
+    /**
+     * Maps a hierarchy written by write.
+     * @param channel a channel positioned at the start of the hierarchy
+     * @return the hierarchy, which stays valid after channel is closed
+     * @throws IOException if the channel cannot be read or does not hold
+     * a hierarchy of the current version
+     */
+    public static ContractionHierarchy load(FileChannel channel) throws IOException {
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Not a contraction hierarchy");
+        }
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a contraction hierarchy");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported hierarchy version " + version
+                    + ", expected " + VERSION + "; rebuild the hierarchy");
+        }
+        int n = in.getInt();
+        int arcs = in.getInt();
+        int graphArcs = in.getInt();
+        int graphChecksum = in.getInt();
+        if (n < 0 || arcs < 0 || HEADER_BYTES + 8L * arcs + 4L * (2L * n + 1 + 2L * arcs) != size) {
+            throw new IOException("Corrupt contraction hierarchy");
+        }
+
+        int at = HEADER_BYTES;
+        DoubleBuffer weights = section(in, at, 8 * arcs).asDoubleBuffer();
+        IntBuffer rank = section(in, at += 8 * arcs, 4 * n).asIntBuffer();
+        IntBuffer offsets = section(in, at += 4 * n, 4 * (n + 1)).asIntBuffer();
+        IntBuffer targets = section(in, at += 4 * (n + 1), 4 * arcs).asIntBuffer();
+        IntBuffer middles = section(in, at + 4 * arcs, 4 * arcs).asIntBuffer();
+        return new ContractionHierarchy(graphArcs, graphChecksum, rank, offsets, targets, weights, middles);
+    }
+
+    private static ByteBuffer section(ByteBuffer in, int offset, int length) {
+        return in.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static class IntList {
+        int[] values;
+        int size;
+
+        IntList(int capacity) {
+            values = new int[Math.max(capacity, 4)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Performs the contraction. The remaining graph is kept as per-vertex
+     * growable arrays of neighbor, weight and middle vertex, with at most
+     * one entry per neighbor.
+     */
+    private static class Builder {
+        private final int n;
+        private final int graphArcs;
+        private final int graphChecksum;
+        private final int[][] neighbors;
+        private final double[][] weights;
+        private final int[][] middles;
+        private final int[] degree;
+        private final int[] deletedNeighbors;
+        private final SearchState witness;
+        // Vertices stamped with the current generation are witness targets
+        private final int[] targetStamp;
+        private int targetGeneration;
+
+        // Upward arcs recorded as each vertex is contracted
+        private final int[] rank;
+        private final int[] upOffsets;
+        private final IntList upTargets = new IntList(16);
+        private final IntList upMiddles = new IntList(16);
+        private double[] upWeights = new double[16];
+
+        Builder(Graph graph) {
+            n = graph.size();
+            graphArcs = graph.arcCount();
+            graphChecksum = graph.checksum();
+            neighbors = new int[n][];
+            weights = new double[n][];
+            middles = new int[n][];
+            degree = new int[n];
+            deletedNeighbors = new int[n];
+            witness = new SearchState(n);
+            targetStamp = new int[n];
+            rank = new int[n];
+            upOffsets = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                int capacity = Math.max(2, graph.endArc(v) - graph.firstArc(v));
+                neighbors[v] = new int[capacity];
+                weights[v] = new double[capacity];
+                middles[v] = new int[capacity];
+                for (int a = graph.firstArc(v); a < graph.endArc(v); a++) {
+                    if (graph.target(a) != v) {
+                        connect(v, graph.target(a), graph.weight(a), -1);
+                    }
+                }
+            }
+        }
+
+        ContractionHierarchy build() {
+            IndexedMinHeap queue = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v++) {
+                queue.pushOrDecrease(v, priority(v));
+            }
+
+            int[] order = new int[n];
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.pop();
+                double updated = priority(v);
+                if (!queue.isEmpty() && updated > queue.minKey()) {
+                    queue.pushOrDecrease(v, updated);
+                    continue;
+                }
+                rank[v] = next;
+                order[next++] = v;
+                contract(v);
+                // Neighbor priorities are refreshed when they reach the top
+                for (int i = 0; i < degree[v]; i++) {
+                    deletedNeighbors[neighbors[v][i]]++;
+                }
+            }
+
+            // Upward arcs were recorded in contraction order; regroup them by vertex
+            int[] offsets = new int[n + 1];
+            int[] targets = new int[upTargets.size()];
+            int[] mids = new int[upTargets.size()];
+            double[] ws = new double[upTargets.size()];
+            for (int r = 0; r < n; r++) {
+                int v = order[r];
+                offsets[v + 1] = upOffsets[r + 1] - upOffsets[r];
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            for (int r = 0; r < n; r++) {
+                int v = order[r];
+                int length = upOffsets[r + 1] - upOffsets[r];
+                System.arraycopy(upTargets.values, upOffsets[r], targets, offsets[v], length);
+                System.arraycopy(upMiddles.values, upOffsets[r], mids, offsets[v], length);
+                System.arraycopy(upWeights, upOffsets[r], ws, offsets[v], length);
+            }
+
+            return new ContractionHierarchy(graphArcs, graphChecksum, IntBuffer.wrap(rank),
+                    IntBuffer.wrap(offsets), IntBuffer.wrap(targets), DoubleBuffer.wrap(ws), IntBuffer.wrap(mids));
+        }
+
+        /**
+         * Edge difference plus the number of contracted neighbors.
+         */
+        private double priority(int v) {
+            return shortcuts(v, false) - degree[v] + deletedNeighbors[v];
+        }
+
+        /**
+         * Removes v from the remaining graph, recording its arcs as upward
+         * arcs and adding the shortcuts its removal requires.
+         */
+        private void contract(int v) {
+            int r = rank[v];
+            for (int i = 0; i < degree[v]; i++) {
+                upTargets.add(neighbors[v][i]);
+                upMiddles.add(middles[v][i]);
+                if (upTargets.size() > upWeights.length) {
+                    upWeights = Arrays.copyOf(upWeights, upWeights.length * 2);
+                }
+                upWeights[upTargets.size() - 1] = weights[v][i];
+            }
+            upOffsets[r + 1] = upTargets.size();
+
+            shortcuts(v, true);
+            for (int i = 0; i < degree[v]; i++) {
+                disconnect(neighbors[v][i], v);
+            }
+        }
+
+        /**
+         * Counts, and if add is true inserts, the shortcuts needed to
+         * contract v: for each pair of neighbors u, w with no witness path
+         * avoiding v that is at most as long as the path through v.
+         */
+        private int shortcuts(int v, boolean add) {
+            int count = 0;
+            int d = degree[v];
+            for (int i = 0; i < d; i++) {
+                int u = neighbors[v][i];
+                double toU = weights[v][i];
+                double limit = 0;
+                for (int j = i + 1; j < d; j++) {
+                    limit = Math.max(limit, toU + weights[v][j]);
+                }
+                if (limit == 0) {
+                    continue;
+                }
+                targetGeneration++;
+                for (int j = i + 1; j < d; j++) {
+                    targetStamp[neighbors[v][j]] = targetGeneration;
+                }
+                witnessSearch(u, v, d - i - 1, limit, add ? WITNESS_SETTLE_LIMIT : ESTIMATE_SETTLE_LIMIT);
+                for (int j = i + 1; j < d; j++) {
+                    int w = neighbors[v][j];
+                    double via = toU + weights[v][j];
+                    if (witness.distance(w) > via) {
+                        count++;
+                        if (add) {
+                            connect(u, w, via, v);
+                            connect(w, u, via, v);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Dijkstra from source over the remaining graph without passing
+         * through ignore, stopping once the given number of marked target
+         * vertices are settled, beyond limit, or after settleLimit
+         * vertices are settled.
+         */
+        private void witnessSearch(int source, int ignore, int targets, double limit, int settleLimit) {
+            witness.reset();
+            IndexedMinHeap heap = witness.heap();
+            witness.update(source, 0.0, -1);
+            heap.pushOrDecrease(source, 0.0);
+            while (!heap.isEmpty() && heap.minKey() <= limit
+                    && witness.settledCount() < settleLimit) {
+                int curr = heap.pop();
+                witness.settle();
+                if (targetStamp[curr] == targetGeneration && --targets == 0) {
+                    return;
+                }
+                double base = witness.distance(curr);
+                for (int i = 0; i < degree[curr]; i++) {
+                    int neighbor = neighbors[curr][i];
+                    double candidate = base + weights[curr][i];
+                    if (neighbor != ignore && candidate < witness.distance(neighbor)) {
+                        witness.update(neighbor, candidate, curr);
+                        heap.pushOrDecrease(neighbor, candidate);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the arc from u to w, or lowers the weight of the existing one.
+         */
+        private void connect(int u, int w, double weight, int middle) {
+            for (int i = 0; i < degree[u]; i++) {
+                if (neighbors[u][i] == w) {
+                    if (weight < weights[u][i]) {
+                        weights[u][i] = weight;
+                        middles[u][i] = middle;
+                    }
+                    return;
+                }
+            }
+            if (degree[u] == neighbors[u].length) {
+                int grown = degree[u] * 2;
+                neighbors[u] = Arrays.copyOf(neighbors[u], grown);
+                weights[u] = Arrays.copyOf(weights[u], grown);
+                middles[u] = Arrays.copyOf(middles[u], grown);
+            }
+            neighbors[u][degree[u]] = w;
+            weights[u][degree[u]] = weight;
+            middles[u][degree[u]] = middle;
+            degree[u]++;
+        }
+
+        private void disconnect(int u, int w) {
+            for (int i = 0; i < degree[u]; i++) {
+                if (neighbors[u][i] == w) {
+                    int last = --degree[u];
+                    neighbors[u][i] = neighbors[u][last];
+                    weights[u][i] = weights[u][last];
+                    middles[u][i] = middles[u][last];
+                    return;
+                }
+            }
+        }
+    }
+}
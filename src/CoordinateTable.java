@@ -0,0 +1,97 @@
+import java.nio.IntBuffer;
+
+/**
+ * Open-addressing hash table from exact coordinates to vertex ids,
+ * replacing a Map from Point to Integer with one int slot per entry.
+ * Slots hold a vertex id plus one, or 0 when empty; the coordinates
+ * themselves are not copied but read from the graph's arrays when a
+ * probe needs to compare them. Keys are hashed from the raw bits of
+ * latitude and longitude, with -0.0 folded into 0.0 so that lookups
+ * agree with Point.equals.
+ */
+public class CoordinateTable {
+    private final IntBuffer slots;
+    private final int mask;
+
+    CoordinateTable(IntBuffer slots) {
+        this.slots = slots;
+        this.mask = slots.limit() - 1;
+    }
+
+    /**
+     * @return the number of slots for a table holding n entries, a power
+     * of two at least twice n so probe sequences stay short
+     */
+    static int capacityFor(int n) {
+        return Integer.highestOneBit(Math.max(2, 2 * n - 1)) << 1;
+    }
+
+    /**
+     * Builds a table over every vertex. When several vertices share
+     * coordinates, the smallest id is kept.
+     * @param coordinates the coordinates of each vertex
+     * @return the table
+     */
+    static CoordinateTable build(Coordinates coordinates) {
+        int n = coordinates.size();
+        Builder builder = new Builder(n);
+        for (int v = 0; v < n; v++) {
+            builder.putIfAbsent(coordinates.lat(v), coordinates.lon(v), v, coordinates);
+        }
+        return builder.toTable();
+    }
+
+    /**
+     * @param pLat latitude to look up
+     * @param pLon longitude to look up
+     * @param coordinates the coordinates the table was built over
+     * @return the id of the vertex at exactly pLat, pLon, or -1 if none
+     */
+    int find(double pLat, double pLon, Coordinates coordinates) {
+        for (int i = Point.hash(pLat, pLon) & mask; ; i = (i + 1) & mask) {
+            int v = slots.get(i) - 1;
+            if (v < 0 || (coordinates.lat(v) == pLat && coordinates.lon(v) == pLon)) {
+                return v;
+            }
+        }
+    }
+
+    IntBuffer slotBuffer() {
+        return slots.duplicate();
+    }
+
+    /**
+     * Fills a table one vertex at a time. The caller must store the
+     * coordinates of each id it adds before adding the next one.
+     */
+    static class Builder {
+        private final int[] slots;
+        private final int mask;
+
+        Builder(int n) {
+            slots = new int[capacityFor(n)];
+            mask = slots.length - 1;
+        }
+
+        /**
+         * @return the id already stored at these coordinates, or -1 after
+         * storing id for them
+         */
+        int putIfAbsent(double pLat, double pLon, int id, Coordinates coordinates) {
+            for (int i = Point.hash(pLat, pLon) & mask; ; i = (i + 1) & mask) {
+                int v = slots[i] - 1;
+                if (v < 0) {
+                    slots[i] = id + 1;
+                    return -1;
+                }
+                if (coordinates.lat(v) == pLat && coordinates.lon(v) == pLon) {
+                    return v;
+                }
+            }
+        }
+
+        CoordinateTable toTable() {
+            return new CoordinateTable(IntBuffer.wrap(slots));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A column of latitude-longitude pairs, stored as 32-bit fixed-point
+ * microdegrees when that is exact and as doubles otherwise.
+ *
+ * The .graph files give coordinates with at most six decimals, so for
+ * real road networks every value is an integer number of microdegrees,
+ * which fits an int with room to spare (180 degrees is 1.8e8). Decoding
+ * divides by 1e6, and since a double is parsed to the nearest double of
+ * its decimal value and division is correctly rounded, the decoded value
+ * is bit for bit the one the parser produced. Encoding checks exactly
+ * that round trip for every value and keeps the doubles if any value
+ * fails it, so callers always see the original coordinates and only the
+ * memory, half as much, differs.
+ */
+public class Coordinates {
+    static final double SCALE = 1e6;
+
+    private final IntBuffer fixedLat;
+    private final IntBuffer fixedLon;
+    private final DoubleBuffer lat;
+    private final DoubleBuffer lon;
+
+    Coordinates(IntBuffer fixedLat, IntBuffer fixedLon) {
+        this.fixedLat = fixedLat;
+        this.fixedLon = fixedLon;
+        this.lat = null;
+        this.lon = null;
+    }
+
+    Coordinates(DoubleBuffer lat, DoubleBuffer lon) {
+        this.fixedLat = null;
+        this.fixedLon = null;
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    /**
+     * Stores the given coordinates as fixed point if every one of them
+     * round trips exactly, and as doubles otherwise.
+     * @param lat latitudes, not copied if kept as doubles
+     * @param lon longitudes, not copied if kept as doubles
+     * @return the coordinates
+     */
+    static Coordinates of(double[] lat, double[] lon) {
+        int[] fixedLat = encode(lat);
+        int[] fixedLon = fixedLat == null ? null : encode(lon);
+        if (fixedLon == null) {
+            return new Coordinates(DoubleBuffer.wrap(lat), DoubleBuffer.wrap(lon));
+        }
+        return new Coordinates(IntBuffer.wrap(fixedLat), IntBuffer.wrap(fixedLon));
+    }
+
+    /**
+     * @return values in microdegrees, or null if any value is not an
+     * exact number of them
+     */
+    private static int[] encode(double[] values) {
+        int[] fixed = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            double scaled = Math.rint(values[i] * SCALE);
+            if (!(Math.abs(scaled) <= Integer.MAX_VALUE)) {
+                return null;
+            }
+            fixed[i] = (int) scaled;
+            if (Double.doubleToLongBits(fixed[i] / SCALE) != Double.doubleToLongBits(values[i])) {
+                return null;
+            }
+        }
+        return fixed;
+    }
+
+    /**
+     * @return the number of coordinate pairs
+     */
+    public int size() {
+        return fixedLat != null ? fixedLat.limit() : lat.limit();
+    }
+
+    /**
+     * @return true if stored as fixed-point microdegrees
+     */
+    public boolean isFixedPoint() {
+        return fixedLat != null;
+    }
+
+    public double lat(int i) {
+        return fixedLat != null ? fixedLat.get(i) / SCALE : lat.get(i);
+    }
+
+    public double lon(int i) {
+        return fixedLon != null ? fixedLon.get(i) / SCALE : lon.get(i);
+    }
+
+    IntBuffer fixedLatBuffer() {
+        return fixedLat.duplicate();
+    }
+
+    IntBuffer fixedLonBuffer() {
+        return fixedLon.duplicate();
+    }
+
+    DoubleBuffer latBuffer() {
+        return lat.duplicate();
+    }
+
+    DoubleBuffer lonBuffer() {
+        return lon.duplicate();
+    }
+}
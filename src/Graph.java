@@ -0,0 +1,477 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable undirected graph of latitude-longitude points stored in
+ * compressed sparse row (CSR) form. Vertices are identified by dense
+ * int ids 0..size()-1; the arcs leaving vertex v are firstArc(v)
+ * through endArc(v)-1, and each arc has a target vertex and a weight,
+ * the straight line distance between its endpoints in miles.
+ * Everything is held in primitive buffers, which either wrap heap
+ * arrays (graphs parsed from text) or views of a memory-mapped binary
+ * snapshot (see GraphSnapshot), so Point objects are only created when
+ * a caller asks for one.
+ */
+public class Graph {
+    // Keeps lowerBound below the arc weights despite rounding
+    private static final double LOWER_BOUND_SLACK = 1 - 1e-9;
+    private static final long NO_CHECKSUM = Long.MIN_VALUE;
+    // Each chunk of the parallel CSR build keeps a degree array over all
+    // vertices, so the chunk count is capped to bound that memory
+    private static final int MAX_BUILD_CHUNKS = 8;
+    private static final int MIN_CHUNK_EDGES = 1 << 16;
+
+    private final Coordinates coordinates;
+    private final IntBuffer offsets;
+    private final IntBuffer neighbors;
+    private final DoubleBuffer weights;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer names;
+    private volatile CoordinateTable ids;
+    private volatile IntBuffer components;
+    private volatile KdTree index;
+    private final double minCosLat;
+    private volatile long checksum = NO_CHECKSUM;
+
+    Graph(Coordinates coordinates, IntBuffer offsets, IntBuffer neighbors,
+            DoubleBuffer weights, IntBuffer nameOffsets, ByteBuffer names) {
+        this(coordinates, offsets, neighbors, weights, nameOffsets, names, null, null, null);
+    }
+
+    /**
+     * Creates a graph whose lookup table, component labels and spatial
+     * index were computed earlier, as stored in a GraphSnapshot.
+     */
+    Graph(Coordinates coordinates, IntBuffer offsets, IntBuffer neighbors,
+            DoubleBuffer weights, IntBuffer nameOffsets, ByteBuffer names,
+            CoordinateTable ids, IntBuffer components, KdTree index) {
+        this.coordinates = coordinates;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.weights = weights;
+        this.nameOffsets = nameOffsets;
+        this.names = names;
+        this.ids = ids;
+        this.components = components;
+        this.index = index;
+
+        double minLat = 0;
+        double maxLat = 0;
+        if (index != null) {
+            double[] bounds = index.bounds();
+            minLat = bounds[0];
+            maxLat = bounds[1];
+        } else if (coordinates.size() > 0) {
+            minLat = Double.POSITIVE_INFINITY;
+            maxLat = Double.NEGATIVE_INFINITY;
+            for (int v = 0; v < coordinates.size(); v++) {
+                minLat = Math.min(minLat, coordinates.lat(v));
+                maxLat = Math.max(maxLat, coordinates.lat(v));
+            }
+        }
+        double cos = Math.min(Math.cos(Math.toRadians(minLat)), Math.cos(Math.toRadians(maxLat)));
+        this.minCosLat = Math.max(0, Math.min(1, cos));
+    }
+
+    /**
+     * Builds a graph from parallel vertex arrays and edge endpoint arrays
+     * as read from a .graph file. Each edge is stored in both directions.
+     * Vertices with duplicate coordinates collapse onto the first of them,
+     * and edges are redirected accordingly.
+     * @param lat latitude of each vertex
+     * @param lon longitude of each vertex
+     * @param nameOffsets the name of vertex i is nameBytes[nameOffsets[i]]
+     * through nameBytes[nameOffsets[i+1]-1], encoded in UTF-8
+     * @param nameBytes concatenated vertex names
+     * @param from first endpoint of each edge, rewritten in place
+     * @param to second endpoint of each edge, rewritten in place
+     * @param numEdges number of valid entries in from and to
+     * @return the graph
+     */
+    public static Graph build(double[] lat, double[] lon, int[] nameOffsets, byte[] nameBytes,
+            int[] from, int[] to, int numEdges) {
+        int numVertices = lat.length;
+        CoordinateTable.Builder ids = new CoordinateTable.Builder(numVertices);
+        Coordinates view = new Coordinates(DoubleBuffer.wrap(lat), DoubleBuffer.wrap(lon));
+        int[] canonical = null;
+        int n = 0;
+        int nameEnd = 0;
+        for (int i = 0; i < numVertices; i++) {
+            int id = ids.putIfAbsent(lat[i], lon[i], n, view);
+            if (id < 0) {
+                lat[n] = lat[i];
+                lon[n] = lon[i];
+                int length = nameOffsets[i + 1] - nameOffsets[i];
+                System.arraycopy(nameBytes, nameOffsets[i], nameBytes, nameEnd, length);
+                nameOffsets[n] = nameEnd;
+                nameEnd += length;
+                id = n++;
+            }
+            if (canonical == null && id != i) {
+                canonical = new int[numVertices];
+                for (int j = 0; j < i; j++) {
+                    canonical[j] = j;
+                }
+            }
+            if (canonical != null) {
+                canonical[i] = id;
+            }
+        }
+        nameOffsets[n] = nameEnd;
+        if (canonical != null) {
+            for (int i = 0; i < numEdges; i++) {
+                from[i] = canonical[from[i]];
+                to[i] = canonical[to[i]];
+            }
+            lat = Arrays.copyOf(lat, n);
+            lon = Arrays.copyOf(lon, n);
+            nameOffsets = Arrays.copyOf(nameOffsets, n + 1);
+        }
+
+        // Each chunk of edges counts the degrees it contributes, then the
+        // counts become each chunk's starting slot within every vertex's
+        // arcs, so the chunks fill the arrays concurrently and the arcs
+        // still come out in edge order, exactly as one pass would place them
+        int chunks = Math.max(1, Math.min(Math.min(ForkJoinPool.getCommonPoolParallelism(), MAX_BUILD_CHUNKS),
+                numEdges / MIN_CHUNK_EDGES));
+        int[][] next = new int[chunks][];
+        double[] latitudes = lat;
+        double[] longitudes = lon;
+        int vertices = n;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int[] degree = new int[vertices];
+            for (int i = chunkStart(c, chunks, numEdges); i < chunkStart(c + 1, chunks, numEdges); i++) {
+                degree[from[i]]++;
+                degree[to[i]]++;
+            }
+            next[c] = degree;
+        });
+        int[] offsets = new int[n + 1];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            int arcs = 0;
+            for (int[] cursor : next) {
+                int degree = cursor[v];
+                cursor[v] = arcs;
+                arcs += degree;
+            }
+            offsets[v + 1] = arcs;
+        });
+        Arrays.parallelPrefix(offsets, Integer::sum);
+
+        int[] neighbors = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int[] cursor = next[c];
+            for (int i = chunkStart(c, chunks, numEdges); i < chunkStart(c + 1, chunks, numEdges); i++) {
+                int u = from[i];
+                int v = to[i];
+                double w = Point.distance(latitudes[u], longitudes[u], latitudes[v], longitudes[v]);
+                int a = offsets[u] + cursor[u]++;
+                weights[a] = w;
+                neighbors[a] = v;
+                int b = offsets[v] + cursor[v]++;
+                weights[b] = w;
+                neighbors[b] = u;
+            }
+        });
+
+        Graph graph = new Graph(Coordinates.of(lat, lon), IntBuffer.wrap(offsets), IntBuffer.wrap(neighbors), DoubleBuffer.wrap(weights),
+                IntBuffer.wrap(nameOffsets), ByteBuffer.wrap(nameBytes, 0, nameEnd).slice());
+        graph.ids = ids.toTable();
+        graph.components = IntBuffer.wrap(graph.labelComponents());
+        return graph;
+    }
+
+    /**
+     * @return the first of the count parts of [0, total) belonging to chunk
+     */
+    private static int chunkStart(int chunk, int count, int total) {
+        return (int) ((long) total * chunk / count);
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int size() {
+        return coordinates.size();
+    }
+
+    /**
+     * @return the number of directed arcs, twice the number of edges
+     */
+    public int arcCount() {
+        return neighbors.limit();
+    }
+
+    /**
+     * @return index of the first arc leaving v
+     */
+    public int firstArc(int v) {
+        return offsets.get(v);
+    }
+
+    /**
+     * @return one past the index of the last arc leaving v
+     */
+    public int endArc(int v) {
+        return offsets.get(v + 1);
+    }
+
+    /**
+     * @return the vertex at the head of arc a
+     */
+    public int target(int a) {
+        return neighbors.get(a);
+    }
+
+    /**
+     * @return the length of arc a in miles
+     */
+    public double weight(int a) {
+        return weights.get(a);
+    }
+
+    public double lat(int v) {
+        return coordinates.lat(v);
+    }
+
+    public double lon(int v) {
+        return coordinates.lon(v);
+    }
+
+    /**
+     * @return the name of vertex v as given in the .graph file
+     */
+    public String name(int v) {
+        int begin = nameOffsets.get(v);
+        byte[] bytes = new byte[nameOffsets.get(v + 1) - begin];
+        names.get(begin, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a Point with the coordinates of vertex v
+     */
+    public Point point(int v) {
+        return new Point(coordinates.lat(v), coordinates.lon(v));
+    }
+
+    /**
+     * @param p A point, not necessarily in the graph
+     * @return the id of the vertex at exactly p, or -1 if there is none
+     */
+    public int vertexOf(Point p) {
+        return ids().find(p.getLat(), p.getLon(), coordinates);
+    }
+
+    /**
+     * Graphs built without one compute the coordinate lookup table on
+     * first use.
+     */
+    CoordinateTable ids() {
+        CoordinateTable result = ids;
+        if (result == null) {
+            synchronized (this) {
+                result = ids;
+                if (result == null) {
+                    result = CoordinateTable.build(coordinates);
+                    ids = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the label of the connected component of v; vertices share
+     * a label exactly when they are connected
+     */
+    public int component(int v) {
+        return components().get(v);
+    }
+
+    private IntBuffer components() {
+        IntBuffer result = components;
+        if (result == null) {
+            synchronized (this) {
+                result = components;
+                if (result == null) {
+                    result = IntBuffer.wrap(labelComponents());
+                    components = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a spatial index over the vertices, built on first use
+     * unless it was loaded with the graph
+     */
+    public KdTree index() {
+        KdTree result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = new KdTree(this);
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A hash of the coordinates, adjacency lists and arc weights, computed
+     * on first use. Preprocessed data records the checksum of the graph
+     * it was built from, so it can tell a different graph of the same
+     * size apart from the right one. Names are not included, since
+     * renaming a vertex changes no route.
+     * @return the checksum; equal graphs have equal checksums
+     */
+    public int checksum() {
+        long result = checksum;
+        if (result == NO_CHECKSUM) {
+            int h = size();
+            for (int v = 0; v < size(); v++) {
+                h = 31 * h + Double.hashCode(coordinates.lat(v));
+                h = 31 * h + Double.hashCode(coordinates.lon(v));
+                h = 31 * h + offsets.get(v + 1);
+            }
+            for (int a = 0; a < arcCount(); a++) {
+                h = 31 * h + neighbors.get(a);
+                h = 31 * h + Double.hashCode(weights.get(a));
+            }
+            result = h;
+            checksum = result;
+        }
+        return (int) result;
+    }
+
+    /**
+     * Labels every vertex with the id of its connected component by
+     * running a depth first search from each unlabeled vertex.
+     * @return component[v] for every vertex v; vertices share a label
+     * exactly when they are connected
+     */
+    public int[] labelComponents() {
+        int[] component = new int[size()];
+        Arrays.fill(component, -1);
+        int[] toExplore = new int[size()];
+        int label = 0;
+
+        for (int source = 0; source < size(); source++) {
+            if (component[source] >= 0)
+                continue;
+            int top = 0;
+            toExplore[top++] = source;
+            component[source] = label;
+            while (top > 0) {
+                int current = toExplore[--top];
+                for (int a = firstArc(current); a < endArc(current); a++) {
+                    int neighbor = target(a);
+                    if (component[neighbor] < 0) {
+                        component[neighbor] = label;
+                        toExplore[top++] = neighbor;
+                    }
+                }
+            }
+            label++;
+        }
+
+        return component;
+    }
+
+    /**
+     * @return the straight line distance in miles between vertices u and v
+     */
+    public double distance(int u, int v) {
+        return Point.distance(lat(u), lon(u), lat(v), lon(v));
+    }
+
+    /**
+     * Sums the stored arc weights along a path, so no trigonometry is
+     * needed. Consecutive vertices that share no arc are joined by their
+     * straight line distance, which is also what the arc between them
+     * would weigh.
+     * @param path vertex ids in order
+     * @return the length of path in miles, 0 if it has fewer than two vertices
+     */
+    public double pathLength(int[] path) {
+        double length = 0.0;
+        for (int i = 0; i + 1 < path.length; i++) {
+            length += arcWeight(path[i], path[i + 1]);
+        }
+        return length;
+    }
+
+    private double arcWeight(int u, int v) {
+        for (int a = offsets.get(u), end = offsets.get(u + 1); a < end; a++) {
+            if (neighbors.get(a) == v) {
+                return weights.get(a);
+            }
+        }
+        return distance(u, v);
+    }
+
+    /**
+     * A lower bound on the road distance between u and v that, unlike
+     * distance(u, v), is safe for A*. Arc weights scale east-west offsets
+     * by the cosine of the mean latitude of their endpoints, which is
+     * never less than the cosine at the graph's most extreme latitude,
+     * so Point.scaledDistance with that smallest cosine never exceeds an
+     * arc weight. Being Euclidean after a fixed projection, it also obeys
+     * the triangle inequality, so by induction it never exceeds the
+     * length of any path from u to v, and it is consistent: for an arc
+     * u-w, lowerBound(u, t) <= weight(u, w) + lowerBound(w, t). The plain
+     * straight line distance has neither property; between far apart
+     * points at the same latitude it exceeds the length of paths that
+     * bow toward the pole.
+     * @return a lower bound in miles on the length of any path from u to v
+     */
+    public double lowerBound(int u, int v) {
+        return Point.scaledDistance(lat(u), lon(u), lat(v), lon(v), minCosLat)
+                * LOWER_BOUND_SLACK;
+    }
+
+    /**
+     * @return the straight line distance in miles between vertex v and p
+     */
+    public double distance(int v, Point p) {
+        return Point.distance(lat(v), lon(v), p.getLat(), p.getLon());
+    }
+
+    Coordinates coordinates() {
+        return coordinates;
+    }
+
+    IntBuffer offsetBuffer() {
+        return offsets.duplicate();
+    }
+
+    IntBuffer neighborBuffer() {
+        return neighbors.duplicate();
+    }
+
+    DoubleBuffer weightBuffer() {
+        return weights.duplicate();
+    }
+
+    IntBuffer nameOffsetBuffer() {
+        return nameOffsets.duplicate();
+    }
+
+    ByteBuffer nameBuffer() {
+        return names.duplicate();
+    }
+
+    IntBuffer componentBuffer() {
+        return components().duplicate();
+    }
+}
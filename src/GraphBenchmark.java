@@ -0,0 +1,196 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Measures the hot paths of GraphProcessor: initialize, nearestPoint,
+ * connected, route over short, medium and long pairs, and routeDistance.
+ * Queries are drawn with a fixed seed from a cities file in the format
+ * of data/uscities.csv, so runs on the same graph are comparable, and
+ * snapped to the graph so any graph can be measured. The three routes
+ * of TestUSGraphProcessor are measured on their own as well.
+ *
+ * Each benchmark runs its queries once to warm up and once measured,
+ * timing every call, and reports throughput, latency percentiles and the
+ * bytes the calling thread allocated per call.
+ *
+ * Usage: java GraphBenchmark graph-file [cities-file] [queries] [seed]
+ */
+public class GraphBenchmark {
+    public static final String DEFAULT_CITIES = "data/uscities.csv";
+    public static final int DEFAULT_QUERIES = 1000;
+    public static final long DEFAULT_SEED = 42;
+    private static final int INITIALIZE_RUNS = 5;
+    // Straight-line miles separating short from medium and medium from long routes
+    private static final double SHORT_MILES = 50;
+    private static final double LONG_MILES = 500;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    // Results are folded in here so the JIT cannot discard the calls
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: java GraphBenchmark graph-file [cities-file] [queries] [seed]");
+            System.exit(1);
+        }
+        String graphFile = args[0];
+        String citiesFile = args.length > 1 ? args[1] : DEFAULT_CITIES;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUERIES;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+
+        System.out.printf("%-28s %8s %12s %10s %10s %10s %10s %12s%n",
+                "benchmark", "ops", "ops/s", "p50 us", "p90 us", "p99 us", "max us", "bytes/op");
+        GraphProcessor[] loaded = new GraphProcessor[1];
+        measure("initialize", INITIALIZE_RUNS, i -> {
+            GraphProcessor processor = new GraphProcessor();
+            try (FileInputStream in = new FileInputStream(graphFile)) {
+                processor.initialize(in);
+            }
+            loaded[0] = processor;
+        });
+        GraphProcessor processor = loaded[0];
+
+        Random random = new Random(seed);
+        List<Point> cities = readCities(citiesFile);
+        Collections.shuffle(cities, random);
+        Point[] points = new Point[Math.min(queries, cities.size())];
+        Point[] snapped = new Point[points.length];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = cities.get(i);
+            snapped[i] = processor.nearestPoint(points[i]);
+        }
+        measure("nearestPoint", points.length, i -> sink += processor.nearestPoint(points[i]).hashCode());
+        measure("connected", snapped.length,
+                i -> sink += processor.connected(snapped[i], snapped[(i + 1) % snapped.length]) ? 1 : 0);
+
+        List<List<Point[]>> buckets = routePairs(processor, snapped, queries, random);
+        String[] names = {"route short", "route medium", "route long"};
+        List<List<Point>> routes = new ArrayList<>();
+        for (int b = 0; b < buckets.size(); b++) {
+            List<Point[]> pairs = buckets.get(b);
+            measure(names[b], pairs.size(), i -> sink += processor.route(pairs.get(i)[0], pairs.get(i)[1]).size());
+            for (Point[] pair : pairs) {
+                routes.add(processor.route(pair[0], pair[1]));
+            }
+        }
+        measure("routeDistance", routes.size(), i -> sink += (long) processor.routeDistance(routes.get(i)));
+
+        Point[][] named = {
+            {new Point(47.578813, -122.139773), new Point(47.632292, -122.187898)},
+            {new Point(34.154423, -118.396488), new Point(37.398938, -122.02777)},
+            {new Point(25.781443, -80.206716), new Point(45.529817, -122.647848)},
+        };
+        String[] namedCases = {"route Bellevue-Clyde Hill", "route LA-Sunnyvale", "route Miami-Portland"};
+        for (int c = 0; c < named.length; c++) {
+            Point start = processor.nearestPoint(named[c][0]);
+            Point end = processor.nearestPoint(named[c][1]);
+            if (start.equals(end) || !processor.connected(start, end)) {
+                System.out.printf("%-28s no route in this graph%n", namedCases[c]);
+                continue;
+            }
+            measure(namedCases[c], 20, i -> sink += processor.route(start, end).size());
+        }
+    }
+
+    /**
+     * Draws connected pairs of snapped points until each of the short,
+     * medium and long buckets holds count pairs or the draws run out.
+     */
+    private static List<List<Point[]>> routePairs(GraphProcessor processor, Point[] points, int count,
+            Random random) {
+        List<List<Point[]>> buckets = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        for (int attempt = 0; attempt < 100 * count && points.length > 1; attempt++) {
+            Point start = points[random.nextInt(points.length)];
+            Point end = points[random.nextInt(points.length)];
+            double miles = start.distance(end);
+            List<Point[]> bucket = buckets.get(miles < SHORT_MILES ? 0 : miles < LONG_MILES ? 1 : 2);
+            if (bucket.size() < count && !start.equals(end) && processor.connected(start, end)) {
+                bucket.add(new Point[] {start, end});
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Runs op for i = 0..count-1 once to warm up and once timed, then
+     * prints a result line.
+     */
+    private static void measure(String name, int count, Op op) throws Exception {
+        if (count == 0) {
+            System.out.printf("%-28s no queries%n", name);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            op.run(i);
+        }
+        long[] nanos = new long[count];
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long t0 = System.nanoTime();
+            op.run(i);
+            nanos[i] = System.nanoTime() - t0;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        Arrays.sort(nanos);
+        System.out.printf("%-28s %8d %12.1f %10.1f %10.1f %10.1f %10.1f %12s%n", name, count,
+                count / (elapsed / 1e9), percentile(nanos, 0.50), percentile(nanos, 0.90),
+                percentile(nanos, 0.99), nanos[count - 1] / 1e3,
+                allocatedBefore < 0 ? "n/a" : String.valueOf(allocated / count));
+    }
+
+    /**
+     * @return the pth quantile of sorted in microseconds
+     */
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e3;
+    }
+
+    /**
+     * @return the bytes the calling thread has allocated so far, or -1 if
+     * the JVM does not report it
+     */
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            ((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+            return (com.sun.management.ThreadMXBean) bean;
+        }
+        return null;
+    }
+
+    // reads the points of a cities file, skipping lines that do not parse
+    private static List<Point> readCities(String fileName) throws IOException {
+        List<Point> cities = new ArrayList<>();
+        try (Scanner reader = new Scanner(new File(fileName), StandardCharsets.UTF_8)) {
+            while (reader.hasNextLine()) {
+                String[] info = reader.nextLine().split(",");
+                try {
+                    cities.add(new Point(Double.parseDouble(info[2]), Double.parseDouble(info[3])));
+                } catch (RuntimeException e) {
+                    continue;
+                }
+            }
+        }
+        return cities;
+    }
+
+    private interface Op {
+        void run(int i) throws Exception;
+    }
+}
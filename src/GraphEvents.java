@@ -0,0 +1,105 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by GraphProcessor, so that slow
+ * loads and queries in a recording line up with the GC pauses and CPU
+ * samples around them. JFR records each event's start time, duration
+ * and thread itself. The events are disabled unless a recording enables
+ * them, for example with
+ *
+ *   java -XX:StartFlightRecording:filename=graph.jfr,settings=profile ...
+ *
+ * and while disabled GraphProcessor skips timing them altogether.
+ * Queries check the static types below rather than a new event's
+ * isEnabled, since the JIT does not always remove the allocation.
+ */
+final class GraphEvents {
+    static final EventType ROUTE = EventType.getEventType(Route.class);
+    static final EventType NEAREST_POINT = EventType.getEventType(NearestPoint.class);
+
+    private GraphEvents() {
+    }
+
+    @Name("graph.Initialize")
+    @Label("Graph Initialize")
+    @Category("Graph")
+    @Description("GraphProcessor.initialize reading a .graph file or a snapshot")
+    @StackTrace(false)
+    static final class Initialize extends Event {
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+
+        @Label("Snapshot")
+        boolean snapshot;
+
+        @Label("Vertices")
+        int vertices;
+
+        @Label("Edges")
+        int edges;
+    }
+
+    @Name("graph.Route")
+    @Label("Graph Route")
+    @Category("Graph")
+    @Description("One route found by GraphProcessor.route or routeAll")
+    @StackTrace(false)
+    static final class Route extends Event {
+        @Label("Start Latitude")
+        double startLat;
+
+        @Label("Start Longitude")
+        double startLon;
+
+        @Label("End Latitude")
+        double endLat;
+
+        @Label("End Longitude")
+        double endLon;
+
+        @Label("Mode")
+        String mode;
+
+        @Label("Cached")
+        @Description("Whether the route came from the route cache")
+        boolean cached;
+
+        @Label("Settled")
+        @Description("Vertices removed from the search queues")
+        int settled;
+
+        @Label("Path Vertices")
+        @Description("Points on the route, 0 if there is none")
+        int pathVertices;
+
+        @Label("Path Miles")
+        double pathMiles;
+    }
+
+    @Name("graph.NearestPoint")
+    @Label("Graph Nearest Point")
+    @Category("Graph")
+    @Description("One GraphProcessor.nearestPoint query")
+    @StackTrace(false)
+    static final class NearestPoint extends Event {
+        @Label("Latitude")
+        double lat;
+
+        @Label("Longitude")
+        double lon;
+
+        @Label("Nearest Latitude")
+        double nearestLat;
+
+        @Label("Nearest Longitude")
+        double nearestLon;
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes synthetic .graph files of any size for scale testing, with
+ * coordinates inside the continental United States given to six
+ * decimals like the real data. Three shapes are available:
+ *
+ *   grid       a jittered street grid with a few east-west blocks
+ *              missing and a few diagonal shortcuts, one component
+ *   geometric  uniformly random points, each joined to every point
+ *              within the radius that gives about six neighbors on
+ *              average, one giant component and many small ones
+ *   highway    jittered city grids scattered over the map, joined by
+ *              highways into one network, with a few island cities
+ *              left unjoined as separate components
+ *
+ * The same shape, size and seed always produce the same file.
+ *
+ * Usage: java GraphGenerator grid|geometric|highway vertices output.graph [seed]
+ */
+public class GraphGenerator {
+    public static final long DEFAULT_SEED = 1;
+    private static final double MIN_LAT = 30;
+    private static final double MAX_LAT = 48;
+    private static final double MIN_LON = -122;
+    private static final double MAX_LON = -75;
+    // Average number of neighbors in a geometric graph, comfortably
+    // above the 4.5 or so needed for a giant component
+    private static final double GEOMETRIC_DEGREE = 6;
+    // Vertices per city, the share of vertices spent on highways, and
+    // the share of cities that get no highway
+    private static final int CITY_SIZE = 2500;
+    private static final double HIGHWAY_SHARE = 0.1;
+    private static final double ISLAND_SHARE = 0.05;
+
+    private final Random random;
+    private final double[] lat;
+    private final double[] lon;
+    private int vertices;
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private int edges;
+
+    private GraphGenerator(int capacity, long seed) {
+        random = new Random(seed);
+        lat = new double[capacity];
+        lon = new double[capacity];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: java GraphGenerator grid|geometric|highway vertices output.graph [seed]");
+            System.exit(1);
+        }
+        int n = Integer.parseInt(args[1]);
+        if (n < 1) {
+            System.err.println("Usage: java GraphGenerator grid|geometric|highway vertices output.graph [seed]");
+            System.err.println("The number of vertices must be at least 1");
+            System.exit(1);
+        }
+        long seed = args.length == 4 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        GraphGenerator generator = new GraphGenerator(n, seed);
+        switch (args[0]) {
+            case "grid":
+                generator.grid(n);
+                break;
+            case "geometric":
+                generator.geometric(n);
+                break;
+            case "highway":
+                generator.highway(n);
+                break;
+            default:
+                System.err.println("Unknown shape " + args[0] + "; expected grid, geometric or highway");
+                System.exit(1);
+        }
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+            generator.write(out);
+        }
+    }
+
+    /**
+     * A grid of n vertices as square as possible over the whole map.
+     */
+    private void grid(int n) {
+        int columns = (int) Math.ceil(Math.sqrt(n * (MAX_LON - MIN_LON) / (MAX_LAT - MIN_LAT)));
+        grid(n, columns, MIN_LAT, MIN_LON, (MAX_LON - MIN_LON) / columns);
+    }
+
+    /**
+     * Adds a jittered grid of n vertices, columns wide, with its south
+     * west corner at lat0, lon0 and step degrees between streets. About
+     * 5% of the east-west streets are missing, though never in the
+     * first row, and 2% of the blocks get a diagonal. Every north-south
+     * street is kept, so the grid stays connected.
+     */
+    private void grid(int n, int columns, double lat0, double lon0, double step) {
+        int first = vertices;
+        for (int i = 0; i < n; i++) {
+            int row = i / columns;
+            int column = i % columns;
+            addVertex(lat0 + (row + jitter()) * step, lon0 + (column + jitter()) * step);
+        }
+        for (int i = 0; i < n; i++) {
+            int column = i % columns;
+            boolean east = column + 1 < columns && i + 1 < n;
+            boolean north = i + columns < n;
+            if (east && (i < columns || random.nextDouble() >= 0.05)) {
+                addEdge(first + i, first + i + 1);
+            }
+            if (north) {
+                addEdge(first + i, first + i + columns);
+            }
+            if (east && north && i + columns + 1 < n && random.nextDouble() < 0.02) {
+                addEdge(first + i, first + i + columns + 1);
+            }
+        }
+    }
+
+    /**
+     * n uniform random points, joined within a radius chosen for
+     * GEOMETRIC_DEGREE neighbors on average, found through a bucket grid
+     * with cells one radius wide.
+     */
+    private void geometric(int n) {
+        double radius = Math.sqrt(GEOMETRIC_DEGREE * (MAX_LAT - MIN_LAT) * (MAX_LON - MIN_LON) / (Math.PI * n));
+        for (int i = 0; i < n; i++) {
+            addVertex(MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT),
+                    MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON));
+        }
+        int rows = Math.max(1, (int) ((MAX_LAT - MIN_LAT) / radius));
+        int columns = Math.max(1, (int) ((MAX_LON - MIN_LON) / radius));
+        int[] cellStart = new int[rows * columns + 1];
+        int[] cellOf = new int[n];
+        for (int v = 0; v < n; v++) {
+            int row = Math.min(rows - 1, (int) ((lat[v] - MIN_LAT) / radius));
+            int column = Math.min(columns - 1, (int) ((lon[v] - MIN_LON) / radius));
+            cellOf[v] = row * columns + column;
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < rows * columns; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] byCell = new int[n];
+        int[] next = Arrays.copyOf(cellStart, rows * columns);
+        for (int v = 0; v < n; v++) {
+            byCell[next[cellOf[v]]++] = v;
+        }
+        for (int v = 0; v < n; v++) {
+            int row = cellOf[v] / columns;
+            int column = cellOf[v] % columns;
+            for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+                for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                    int cell = r * columns + c;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int u = byCell[k];
+                        double dLat = lat[u] - lat[v];
+                        double dLon = lon[u] - lon[v];
+                        if (u > v && dLat * dLat + dLon * dLon <= radius * radius) {
+                            addEdge(v, u);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cities of about CITY_SIZE vertices at random places. Except for the
+     * islands, each city gets a highway to the nearest city generated
+     * before it, which joins them all into one network, and one to its
+     * nearest city overall. Highway vertices are spaced evenly along the
+     * straight line between the two city centers, and any vertices left
+     * over from rounding are scattered as isolated points. Below about
+     * CITY_SIZE vertices there is a single city, of one vertex if n is
+     * that small, and no highways.
+     */
+    private void highway(int n) {
+        int cities = Math.max(1, (int) (n * (1 - HIGHWAY_SHARE) / CITY_SIZE));
+        int citySize = Math.max(1, (int) (n * (1 - HIGHWAY_SHARE) / cities));
+        int islands = (int) (cities * ISLAND_SHARE);
+        int[] center = new int[cities];
+        double step = 0.01;
+        int columns = (int) Math.ceil(Math.sqrt(citySize));
+        double extent = columns * step;
+        for (int c = 0; c < cities; c++) {
+            double lat0 = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT - extent);
+            double lon0 = MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON - extent);
+            int first = vertices;
+            grid(citySize, columns, lat0, lon0, step);
+            center[c] = first + Math.min(citySize - 1, citySize / 2 + columns / 2);
+        }
+
+        int joined = cities - islands;
+        int[][] roads = new int[joined][];
+        double totalLength = 0;
+        for (int c = 0; c < joined; c++) {
+            int[] earlier = nearestCities(center, c, c, 1);
+            int[] overall = nearestCities(center, c, joined, 1);
+            roads[c] = earlier.length == 0 || overall.length == 0 || earlier[0] == overall[0]
+                    ? overall : new int[] {earlier[0], overall[0]};
+            for (int d : roads[c]) {
+                totalLength += Math.hypot(lat[center[c]] - lat[center[d]], lon[center[c]] - lon[center[d]]);
+            }
+        }
+        double spacing = totalLength / Math.max(1, lat.length - vertices);
+        for (int c = 0; c < joined; c++) {
+            for (int d : roads[c]) {
+                int previous = center[c];
+                double dLat = lat[center[d]] - lat[center[c]];
+                double dLon = lon[center[d]] - lon[center[c]];
+                int stops = (int) (Math.hypot(dLat, dLon) / spacing);
+                for (int s = 1; s <= stops && vertices < lat.length; s++) {
+                    double t = (double) s / (stops + 1);
+                    addVertex(lat[center[c]] + t * dLat + jitter() * 0.001, lon[center[c]] + t * dLon);
+                    addEdge(previous, vertices - 1);
+                    previous = vertices - 1;
+                }
+                addEdge(previous, center[d]);
+            }
+        }
+        while (vertices < lat.length) {
+            addVertex(MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT),
+                    MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON));
+        }
+    }
+
+    /**
+     * @return the count cities among the first limit nearest to city c,
+     * other than c itself
+     */
+    private int[] nearestCities(int[] center, int c, int limit, int count) {
+        int[] nearest = new int[Math.max(0, Math.min(count, c < limit ? limit - 1 : limit))];
+        double[] best = new double[nearest.length];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        for (int d = 0; d < limit; d++) {
+            if (d == c) {
+                continue;
+            }
+            double dist = Math.hypot(lat[center[c]] - lat[center[d]], lon[center[c]] - lon[center[d]]);
+            for (int k = 0; k < nearest.length; k++) {
+                if (dist < best[k]) {
+                    System.arraycopy(best, k, best, k + 1, nearest.length - k - 1);
+                    System.arraycopy(nearest, k, nearest, k + 1, nearest.length - k - 1);
+                    best[k] = dist;
+                    nearest[k] = d;
+                    break;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @return a random offset of up to a quarter step either way
+     */
+    private double jitter() {
+        return (random.nextDouble() - 0.5) * 0.5;
+    }
+
+    /**
+     * Adds a vertex, rounding its coordinates to six decimals as the
+     * real data is.
+     */
+    private void addVertex(double latitude, double longitude) {
+        lat[vertices] = Math.rint(latitude * 1e6) / 1e6;
+        lon[vertices] = Math.rint(longitude * 1e6) / 1e6;
+        vertices++;
+    }
+
+    private void addEdge(int u, int v) {
+        if (u == v) {
+            return;
+        }
+        if (edges == from.length) {
+            from = Arrays.copyOf(from, 2 * edges);
+            to = Arrays.copyOf(to, 2 * edges);
+        }
+        from[edges] = u;
+        to[edges] = v;
+        edges++;
+    }
+
+    private void write(Writer writer) throws IOException {
+        BufferedWriter out = new BufferedWriter(writer, 1 << 16);
+        StringBuilder line = new StringBuilder(64);
+        out.write(vertices + " " + edges + "\n");
+        for (int v = 0; v < vertices; v++) {
+            line.setLength(0);
+            line.append('v').append(v).append(' ');
+            appendMicrodegrees(line, Math.round(lat[v] * 1e6));
+            line.append(' ');
+            appendMicrodegrees(line, Math.round(lon[v] * 1e6));
+            out.append(line.append('\n'));
+        }
+        for (int e = 0; e < edges; e++) {
+            line.setLength(0);
+            out.append(line.append(from[e]).append(' ').append(to[e]).append('\n'));
+        }
+        out.flush();
+    }
+
+    /**
+     * Appends micro / 1e6 with exactly six decimals, without the cost of
+     * String.format.
+     */
+    private static void appendMicrodegrees(StringBuilder out, long micro) {
+        if (micro < 0) {
+            out.append('-');
+            micro = -micro;
+        }
+        out.append(micro / 1000000).append('.');
+        String fraction = Long.toString(micro % 1000000);
+        for (int i = fraction.length(); i < 6; i++) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+}
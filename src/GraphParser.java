@@ -0,0 +1,303 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Reads graphs in the .graph format. The first line holds the number of
+ * vertices and edges, followed by one "name latitude longitude" line per
+ * vertex and one "index index" line per edge.
+ * The file is memory-mapped and tokenized in place: numbers are parsed
+ * straight from the mapped bytes without building intermediate Strings,
+ * and no objects are created per line or per vertex. Parsing allocates
+ * primitive arrays only: the raw vertex and edge arrays, then the CSR
+ * arrays and the coordinate lookup table that Graph.build derives from
+ * them. The one exception is a number with more than 15 significant
+ * digits or an extreme exponent, which goes through a temporary String
+ * and Double.parseDouble.
+ *
+ * Large files are parsed in parallel. The lines after the header are
+ * split into chunks of about equal size at line boundaries; one pass
+ * counts the lines of each chunk, which tells every chunk the index of
+ * its first line and so whether each of its lines is a vertex or an
+ * edge, and a second pass parses the chunks concurrently, each writing
+ * straight into its own slots of the shared arrays. Vertex names are
+ * then copied into place once their offsets are known. The result, and
+ * the error reported for a malformed file, are the same as parsing the
+ * file in one pass.
+ */
+public class GraphParser {
+    // Files and chunks smaller than this are not worth splitting further
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final MappedByteBuffer buf;
+    private final int limit;
+    private int pos;
+
+    private GraphParser(MappedByteBuffer buf, int pos) {
+        this.buf = buf;
+        this.limit = buf.limit();
+        this.pos = pos;
+    }
+
+    /**
+     * Parses a .graph file starting at the current position of file.
+     * @param file a FileInputStream of the .graph file
+     * @return the graph described by the file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static Graph parse(FileInputStream file) throws IOException {
+        FileChannel channel = file.getChannel();
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Graph file too large to map: " + size + " bytes");
+        }
+        GraphParser parser = new GraphParser(channel.map(FileChannel.MapMode.READ_ONLY, start, size), 0);
+        return parser.parse();
+    }
+
+    private Graph parse() throws IOException {
+        int numVertices = nextInt();
+        int numEdges = nextInt();
+        nextLine();
+
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        int chunks = threads == 1 ? 1 : Math.max(1, Math.min(CHUNKS_PER_THREAD * threads,
+                (limit - pos) / MIN_CHUNK_BYTES));
+        int[] bounds = new int[chunks + 1];
+        bounds[0] = pos;
+        for (int c = 1; c < chunks; c++) {
+            pos = Math.max(bounds[c - 1], (int) (bounds[0] + (long) (limit - bounds[0]) * c / chunks));
+            nextLine();
+            bounds[c] = pos;
+        }
+        bounds[chunks] = limit;
+        int[] firstLine = new int[chunks];
+        IntStream.range(0, chunks - 1).parallel().forEach(c -> firstLine[c + 1] = countLines(bounds[c], bounds[c + 1]));
+        for (int c = 0; c < chunks - 1; c++) {
+            firstLine[c + 1] += firstLine[c];
+        }
+
+        double[] lat = new double[numVertices];
+        double[] lon = new double[numVertices];
+        int[] nameStarts = new int[numVertices];
+        int[] nameOffsets = new int[numVertices + 1];
+        int[] from = new int[numEdges];
+        int[] to = new int[numEdges];
+        long lines = (long) numVertices + numEdges;
+        IOException[] errors = new IOException[chunks];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            GraphParser chunk = new GraphParser(buf, bounds[c]);
+            // The last chunk reads on past the end of the file if lines
+            // are missing, so that it fails as a single pass would
+            long end = c == chunks - 1 ? lines : Math.min(firstLine[c + 1], lines);
+            try {
+                for (int line = firstLine[c]; line < end; line++) {
+                    if (line < numVertices) {
+                        chunk.nextVertex(line, lat, lon, nameStarts, nameOffsets);
+                    } else {
+                        from[line - numVertices] = chunk.nextIndex(numVertices);
+                        to[line - numVertices] = chunk.nextIndex(numVertices);
+                    }
+                    chunk.nextLine();
+                }
+            } catch (IOException e) {
+                errors[c] = e;
+            }
+        });
+        for (IOException e : errors) {
+            if (e != null) {
+                throw e;
+            }
+        }
+
+        Arrays.parallelPrefix(nameOffsets, Integer::sum);
+        byte[] nameBytes = new byte[nameOffsets[numVertices]];
+        IntStream.range(0, numVertices).parallel().forEach(i ->
+                buf.get(nameStarts[i], nameBytes, nameOffsets[i], nameOffsets[i + 1] - nameOffsets[i]));
+
+        return Graph.build(lat, lon, nameOffsets, nameBytes, from, to, numEdges);
+    }
+
+    /**
+     * Parses the vertex line for vertex i, recording where its name
+     * starts and, in nameOffsets[i + 1], how long it is.
+     */
+    private void nextVertex(int i, double[] lat, double[] lon, int[] nameStarts, int[] nameOffsets)
+            throws IOException {
+        int begin = skipToken();
+        nameStarts[i] = begin;
+        nameOffsets[i + 1] = pos - begin;
+        lat[i] = nextDouble();
+        lon[i] = nextDouble();
+    }
+
+    /**
+     * @return the number of lines that start in [begin, end), counting a
+     * last line without a newline
+     */
+    private int countLines(int begin, int end) {
+        int lines = 0;
+        for (int i = begin; i < end; i++) {
+            if (buf.get(i) == '\n') {
+                lines++;
+            }
+        }
+        if (end > begin && buf.get(end - 1) != '\n') {
+            lines++;
+        }
+        return lines;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private void skipBlanks() {
+        while (pos < limit && isBlank(buf.get(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Advances past the next newline, ignoring any trailing tokens.
+     */
+    private void nextLine() {
+        while (pos < limit && buf.get(pos++) != '\n') {
+            // skip
+        }
+    }
+
+    /**
+     * Advances past the next whitespace-delimited token.
+     * @return the position where the token begins
+     */
+    private int skipToken() throws IOException {
+        skipBlanks();
+        int begin = pos;
+        while (pos < limit && !isBlank(buf.get(pos)) && buf.get(pos) != '\n') {
+            pos++;
+        }
+        if (pos == begin) {
+            throw malformed("expected a vertex name");
+        }
+        return begin;
+    }
+
+    private int nextIndex(int numVertices) throws IOException {
+        int index = nextInt();
+        if (index < 0 || index >= numVertices) {
+            throw malformed("vertex index " + index + " out of range");
+        }
+        return index;
+    }
+
+    private int nextInt() throws IOException {
+        skipBlanks();
+        int begin = pos;
+        long value = 0;
+        while (pos < limit) {
+            int digit = buf.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) {
+                throw malformed("integer overflow");
+            }
+            pos++;
+        }
+        if (pos == begin) {
+            throw malformed("expected an integer");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a decimal number in place. Numbers with at most 15
+     * significant digits and a small exponent, which covers every
+     * coordinate in practice, are converted exactly with a single
+     * multiplication or division, matching Double.parseDouble. Anything
+     * else falls back to Double.parseDouble on the token text.
+     */
+    private double nextDouble() throws IOException {
+        skipBlanks();
+        int begin = pos;
+        boolean negative = false;
+        if (pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+            negative = buf.get(pos) == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                if (digits <= 15) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (seenPoint) {
+                        scale--;
+                    }
+                } else if (!seenPoint) {
+                    scale++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        if (!seenDigit) {
+            throw malformed("expected a number");
+        }
+
+        if (pos < limit && !isBlank(buf.get(pos)) && buf.get(pos) != '\n') {
+            // exponents, NaN and other rare forms
+            while (pos < limit && !isBlank(buf.get(pos)) && buf.get(pos) != '\n') {
+                pos++;
+            }
+            return slowDouble(begin);
+        }
+        if (digits > 15 || scale < -22 || scale > 22) {
+            return slowDouble(begin);
+        }
+
+        double value = mantissa;
+        value = scale < 0 ? value / POWERS_OF_TEN[-scale] : value * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(int begin) throws IOException {
+        byte[] token = new byte[pos - begin];
+        buf.get(begin, token);
+        try {
+            return Double.parseDouble(new String(token, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw malformed("expected a number");
+        }
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed .graph file at byte " + pos + ": " + reason);
+    }
+}
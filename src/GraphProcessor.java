@@ -1,198 +1,816 @@
 import java.security.InvalidAlgorithmParameterException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
 
 /**
  * Models a weighted graph of latitude-longitude points
  * and supports various distance and routing operations.
+ * Once initialize returns, every query method may be called
+ * from any number of threads at the same time.
  * To do: Add your name(s) as additional authors
  * @author Brandon Fain
  *
  */
 public class GraphProcessor {
-    private HashMap<Point, List<Point>> vertices;
-
-    /**
-     * Creates and initializes a graph from a source data
-     * file in the .graph format. Should be called
-     * before any other methods work.
-     * @param file a FileInputStream of the .graph file
-     * @throws Exception if file not found or error reading
-     */
-    public void initialize(FileInputStream file) throws Exception {
-      vertices = new HashMap<>();
-      Scanner reader = new Scanner(file);
-      int numVertices = reader.nextInt();
-      int numEdges = reader.nextInt();
-      ArrayList<Point> pts = new ArrayList<>();
-
-      reader.nextLine();
-
-      // Read next "numVertices" lines
-      for (int i = 0; i < numVertices; i++) {
-        String nextLine = reader.nextLine();
-        String[] elements = nextLine.split(" ");
-        double latitude = Double.parseDouble(elements[1]);
-        double longtidue = Double.parseDouble(elements[2]);
-        Point np = new Point(latitude, longtidue);
-
-        vertices.putIfAbsent(np, new ArrayList<>());
-        pts.add(np);
-      }
-
-      // Read next "numEdges" lines
-      for (int i = 0; i < numEdges; i++) {
-        String nextt = reader.nextLine();
-        String[] arr = nextt.split(" ");
-        int startIndex = Integer.parseInt(arr[0]);
-        int endIndex = Integer.parseInt(arr[1]);
-
-        Point startingPt = pts.get(startIndex);
-        Point endingPt = pts.get(endIndex);
-
-        vertices.get(startingPt).add(endingPt);
-        vertices.get(endingPt).add(startingPt);
-      }
-
-      reader.close();
-    }
-
-
-    /**
-     * Searches for the point in the graph that is closest in
-     * straight-line distance to the parameter point p
-     * @param p A point, not necessarily in the graph
-     * @return The closest point in the graph to p
-     */
-    public Point nearestPoint(Point p) {
-        Point closest = null;
-        double shortestDistance = 999999999;
-
-        for (Point np : vertices.keySet()) {
-          if (np.distance(p) < shortestDistance) {
-            closest = np;
-            shortestDistance = np.distance(p);
-          }
-        }
-
-        return closest;
-    }
-
-
-    /**
-     * Calculates the total distance along the route, summing
-     * the distance between the first and the second Points, 
-     * the second and the third, ..., the second to last and
-     * the last. Distance returned in miles.
-     * @param start Beginning point. May or may not be in the graph.
-     * @param end Destination point May or may not be in the graph.
-     * @return The distance to get from start to end
-     */
-    public double routeDistance(List<Point> route) {
-        double distance = 0.0;
-        for (int i = 0; i<route.size()-1; i++) {
-            distance += route.get(i).distance(route.get(i+1));
-        }
-        return distance;
-        // TODO Implement routeDistance
-    }
-    
-
-    /**
-     * Checks if input points are part of a connected component
-     * in the graph, that is, can one get from one to the other
-     * only traversing edges in the graph
-     * @param p1 one point
-     * @param p2 another point
-     * @return true if p2 is reachable from p1 (and vice versa)
-     */
-    public boolean connected(Point p1, Point p2) {
-        if (vertices.get(p1).contains(p2))
-            return true;
-        if (!vertices.keySet().contains(p1) || !vertices.keySet().contains(p2))
-            return false;
-        
-        Set<Point> visited = new HashSet<>();
-        Map<Point, Point> previous = new HashMap<>();
-        Stack<Point> toExplore = new Stack();
-        Point current = p1;
-        toExplore.add(current);
-        visited.add(current);
-
-        while(!toExplore.isEmpty()) {
-          current = toExplore.pop();
-          for (Point neighbor : vertices.get(current)) {
-            if (neighbor.equals(p2))
-              return true;
-            if (!visited.contains(neighbor)) {
-              previous.put(neighbor, current);
-              visited.add(neighbor);
-              toExplore.push(neighbor);
-            }
-          }
-        }
-
-        return false;
-    }
-
-    /**
-     * Returns the shortest path, traversing the graph, that begins at start
-     * and terminates at end, including start and end as the first and last
-     * points in the returned list. If there is no such route, either because
-     * start is not connected to end or because start equals end, throws an
-     * exception.
-     * @param start Beginning point.
-     * @param end Destination point.
-     * @return The shortest path [start, ..., end].
-     * @throws InvalidAlgorithmParameterException if there is no such route, 
-     * either because start is not connected to end or because start equals end.
-     */
-    public List<Point> route(Point start, Point end) throws InvalidAlgorithmParameterException {
-        if (!vertices.keySet().contains(start) || !vertices.keySet().contains(end) || start.equals(end) ||
-            connected(start, end) == false) {
-            throw new InvalidAlgorithmParameterException("No path between start and end");   
-        }
-
-        Map<Point, Double> distance = new HashMap<>();
-        List<Point> path = new ArrayList<>();
-        Map<Point, Point> previous = new HashMap<>();
-        PriorityQueue<Point> toExplore = new PriorityQueue<>();
-        Point curr = start;
-
-        distance.put(curr, 0.0);
-        toExplore.add(curr);
-
-        while(!toExplore.isEmpty()) {
-          curr = toExplore.remove();
-          for (Point neighbor : vertices.get(curr)) {
-            double weight = curr.distance(neighbor);
-            if (!distance.containsKey(neighbor) || distance.get(neighbor) > distance.get(curr) + weight) {
-              distance.put(neighbor, distance.get(curr) + weight);
-              previous.put(neighbor, curr);
-              toExplore.add(neighbor);
-            }
-          }
-        }
-
-        curr = end;
-
-        while(!curr.equals(start)) {
-          path.add(curr);
-          curr = previous.get(curr);
-        }
-
-        path.add(start);
-        Collections.reverse(path);
-        
-        return path;
-    }
-}
\ No newline at end of file
+    private static final SearchState[] NO_SEARCH = new SearchState[0];
+
+    private volatile Network network;
+    private volatile RouteMode routeMode = RouteMode.ASTAR;
+    private volatile QueryListener queryListener;
+    private final ThreadLocal<LastSearch> lastSearch = ThreadLocal.withInitial(LastSearch::new);
+
+    /**
+     * Creates and initializes a graph from a source data
+     * file in the .graph format, or from a binary snapshot
+     * written by GraphSnapshot. Should be called
+     * before any other methods work.
+     * @param file a FileInputStream of the .graph or snapshot file
+     * @throws Exception if file not found or error reading
+     */
+    public void initialize(FileInputStream file) throws Exception {
+        GraphEvents.Initialize event = new GraphEvents.Initialize();
+        event.begin();
+        FileChannel channel = file.getChannel();
+        long bytes = channel.size() - channel.position();
+        boolean snapshot = GraphSnapshot.isSnapshot(channel);
+        Graph graph;
+        if (snapshot) {
+            graph = GraphSnapshot.load(channel);
+        } else {
+            graph = GraphParser.parse(file);
+        }
+        network = new Network(graph);
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.snapshot = snapshot;
+            event.vertices = graph.size();
+            event.edges = graph.arcCount() / 2;
+            event.commit();
+        }
+    }
+
+
+    /**
+     * Searches for the point in the graph that is closest in
+     * straight-line distance to the parameter point p
+     * @param p A point, not necessarily in the graph
+     * @return The closest point in the graph to p
+     */
+    public Point nearestPoint(Point p) {
+        Network net = network;
+        QueryListener listener = queryListener;
+        if (listener == null && !GraphEvents.NEAREST_POINT.isEnabled()) {
+            int closest = net.index.nearest(p.getLat(), p.getLon());
+            return closest < 0 ? null : net.graph.point(closest);
+        }
+        GraphEvents.NearestPoint event = new GraphEvents.NearestPoint();
+        event.begin();
+        long start = System.nanoTime();
+        int closest = net.index.nearest(p.getLat(), p.getLon());
+        long searched = System.nanoTime();
+        Point nearest = closest < 0 ? null : net.graph.point(closest);
+        long built = System.nanoTime();
+        event.end();
+        if (listener != null) {
+            listener.queryFinished(new QueryStats(QueryStats.Kind.NEAREST_POINT, 0,
+                    searched - start, built - searched));
+        }
+        if (event.shouldCommit()) {
+            event.lat = p.getLat();
+            event.lon = p.getLon();
+            event.nearestLat = nearest == null ? Double.NaN : nearest.getLat();
+            event.nearestLon = nearest == null ? Double.NaN : nearest.getLon();
+            event.commit();
+        }
+        return nearest;
+    }
+
+
+    /**
+     * Searches for the k points in the graph that are closest in
+     * straight-line distance to the parameter point p
+     * @param p A point, not necessarily in the graph
+     * @param k The number of points wanted
+     * @return The min(k, number of vertices) closest points in the graph
+     * to p, closest first
+     */
+    public List<Point> nearestPoints(Point p, int k) {
+        Network net = network;
+        return toPoints(net.graph, net.index.nearest(p.getLat(), p.getLon(), k));
+    }
+
+
+    /**
+     * Searches for every point in the graph whose straight-line distance
+     * to the parameter point p is at most miles
+     * @param p A point, not necessarily in the graph
+     * @param miles The search radius in miles
+     * @return The points in the graph within miles of p, closest first
+     */
+    public List<Point> pointsWithin(Point p, double miles) {
+        Network net = network;
+        return toPoints(net.graph, net.index.within(p.getLat(), p.getLon(), miles));
+    }
+
+    private static List<Point> toPoints(Graph graph, int[] ids) {
+        List<Point> points = new ArrayList<>(ids.length);
+        for (int v : ids) {
+            points.add(graph.point(v));
+        }
+        return points;
+    }
+
+
+    /**
+     * Calculates the total distance along the route, summing
+     * the distance between the first and the second Points, 
+     * the second and the third, ..., the second to last and
+     * the last. Distance returned in miles.
+     * @param route The points along the route, in order
+     * @return The distance to get from start to end
+     */
+    public double routeDistance(List<Point> route) {
+        double distance = 0.0;
+        for (int i = 0; i<route.size()-1; i++) {
+            distance += route.get(i).distance(route.get(i+1));
+        }
+        return distance;
+    }
+    
+
+    /**
+     * Calculates the total distance along a route given as vertex ids,
+     * as routeDistance would for the corresponding points, but summing
+     * the edge lengths computed once by initialize rather than
+     * recomputing each one from coordinates.
+     * @param route The vertex ids along the route, in order, as used by
+     * ShortestPathTree and getVertexId
+     * @return The distance to get from start to end
+     */
+    public double routeDistance(int[] route) {
+        return network.graph.pathLength(route);
+    }
+
+
+    /**
+     * Checks if input points are part of a connected component
+     * in the graph, that is, can one get from one to the other
+     * only traversing edges in the graph
+     * @param p1 one point
+     * @param p2 another point
+     * @return true if p2 is reachable from p1 (and vice versa)
+     */
+    public boolean connected(Point p1, Point p2) {
+        Network net = network;
+        QueryListener listener = queryListener;
+        if (listener == null) {
+            int source = net.graph.vertexOf(p1);
+            int target = net.graph.vertexOf(p2);
+            if (source < 0 || target < 0)
+                return false;
+            return net.connected(source, target);
+        }
+        long start = System.nanoTime();
+        int source = net.graph.vertexOf(p1);
+        int target = net.graph.vertexOf(p2);
+        long snapped = System.nanoTime();
+        boolean connected = source >= 0 && target >= 0 && net.connected(source, target);
+        listener.queryFinished(new QueryStats(QueryStats.Kind.CONNECTED, snapped - start,
+                System.nanoTime() - snapped, 0));
+        return connected;
+    }
+
+    /**
+     * Returns the shortest path, traversing the graph, that begins at start
+     * and terminates at end, including start and end as the first and last
+     * points in the returned list. If there is no such route, either because
+     * start is not connected to end or because start equals end, throws an
+     * exception.
+     * @param start Beginning point.
+     * @param end Destination point.
+     * @return The shortest path [start, ..., end].
+     * @throws InvalidAlgorithmParameterException if there is no such route, 
+     * either because start is not connected to end or because start equals end.
+     */
+    public List<Point> route(Point start, Point end) throws InvalidAlgorithmParameterException {
+        return route(start, end, routeMode);
+    }
+
+    /**
+     * Returns the shortest path from start to end like route(start, end),
+     * searching with the given algorithm rather than the default one.
+     * @param start Beginning point.
+     * @param end Destination point.
+     * @param mode The search algorithm to use.
+     * @return The shortest path [start, ..., end].
+     * @throws InvalidAlgorithmParameterException if there is no such route,
+     * either because start is not connected to end or because start equals end.
+     */
+    public List<Point> route(Point start, Point end, RouteMode mode) throws InvalidAlgorithmParameterException {
+        List<Point> points = route(network, start, end, mode);
+        if (points == null) {
+            throw new InvalidAlgorithmParameterException("No path between start and end");
+        }
+        return points;
+    }
+
+    /**
+     * Routes every pair as route(pair[0], pair[1]) would, spreading the
+     * searches over the common fork-join pool. See routeAll(pairs, executor).
+     * @param pairs The [start, end] pairs to route.
+     * @return The route for each pair, in the order of pairs, with null
+     * for pairs that have no route.
+     */
+    public List<List<Point>> routeAll(List<Point[]> pairs) {
+        return routeAll(pairs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Routes every pair as routeAll(pairs, executor, parallelism) would,
+     * with one worker per thread executor can usefully run at once: the
+     * parallelism of a ForkJoinPool, and the number of processors for
+     * other executors. A ThreadPoolExecutor gets its core pool size if
+     * that is larger, but never more than its maximum pool size, so an
+     * unbounded pool such as Executors.newCachedThreadPool() does not
+     * start a thread, each with its own search state, per pair.
+     * @param pairs The [start, end] pairs to route.
+     * @param executor Runs the workers, for example a fixed thread pool.
+     * @return The route for each pair, in the order of pairs, with null
+     * for pairs that have no route.
+     */
+    public List<List<Point>> routeAll(List<Point[]> pairs, Executor executor) {
+        int parallelism;
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            parallelism = Math.min(pool.getMaximumPoolSize(),
+                    Math.max(pool.getCorePoolSize(), Runtime.getRuntime().availableProcessors()));
+        } else if (executor instanceof ForkJoinPool) {
+            parallelism = ((ForkJoinPool) executor).getParallelism();
+        } else {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return routeAll(pairs, executor, parallelism);
+    }
+
+    /**
+     * Routes every pair as route(pair[0], pair[1]) would, with the route
+     * mode at the time of the call, submitting up to parallelism workers
+     * to executor. Workers take pairs from a shared counter so long and
+     * short routes balance out, and each worker thread keeps its own
+     * search state, so the throughput grows with the number of workers
+     * executor actually runs at once. Blocks until every route is done.
+     * @param pairs The [start, end] pairs to route.
+     * @param executor Runs the workers, for example a fixed thread pool.
+     * @param parallelism The most workers to submit, at least 1.
+     * @return The route for each pair, in the order of pairs, with null
+     * for pairs that have no route.
+     */
+    public List<List<Point>> routeAll(List<Point[]> pairs, Executor executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+        }
+        Network net = network;
+        RouteMode mode = routeMode;
+        Point[][] input = pairs.toArray(new Point[0][]);
+        List<Point>[] routes = newRouteArray(input.length);
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(input.length, parallelism);
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            tasks[w] = CompletableFuture.runAsync(() -> {
+                for (int i = next.getAndIncrement(); i < input.length; i = next.getAndIncrement()) {
+                    routes[i] = route(net, input[i][0], input[i][1], mode);
+                }
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return Arrays.asList(routes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Point>[] newRouteArray(int length) {
+        return (List<Point>[]) new List<?>[length];
+    }
+
+    /**
+     * Finds a shortest path from start to end in net, reporting it to
+     * the query listener if there is one and to Flight Recorder if it is
+     * recording route events.
+     * @return the points of the path, or null if there is no route
+     */
+    private List<Point> route(Network net, Point start, Point end, RouteMode mode) {
+        QueryListener listener = queryListener;
+        if (listener == null && !GraphEvents.ROUTE.isEnabled()) {
+            int source = net.graph.vertexOf(start);
+            int target = net.graph.vertexOf(end);
+            if (!routable(net, source, target)) {
+                return null;
+            }
+            int[] ids = search(net, source, target, mode);
+            return ids == null ? null : toPoints(net.graph, ids);
+        }
+
+        GraphEvents.Route event = new GraphEvents.Route();
+        event.begin();
+        long begin = System.nanoTime();
+        int source = net.graph.vertexOf(start);
+        int target = net.graph.vertexOf(end);
+        boolean routable = routable(net, source, target);
+        long snapped = System.nanoTime();
+        int[] ids = routable ? search(net, source, target, mode) : null;
+        SearchState[] states = routable ? lastSearch.get().states : NO_SEARCH;
+        long searched = System.nanoTime();
+        List<Point> points = ids == null ? null : toPoints(net.graph, ids);
+        long built = System.nanoTime();
+        event.end();
+        if (listener != null) {
+            listener.queryFinished(new QueryStats(QueryStats.Kind.ROUTE, states, snapped - begin,
+                    searched - snapped, built - searched));
+        }
+        if (event.shouldCommit()) {
+            event.startLat = start.getLat();
+            event.startLon = start.getLon();
+            event.endLat = end.getLat();
+            event.endLon = end.getLon();
+            event.mode = mode.name();
+            event.cached = routable && states == NO_SEARCH;
+            event.settled = routable ? lastSearch.get().settled : 0;
+            event.pathVertices = ids == null ? 0 : ids.length;
+            event.pathMiles = ids == null ? 0 : net.graph.pathLength(ids);
+            event.commit();
+        }
+        return points;
+    }
+
+    private static boolean routable(Network net, int source, int target) {
+        return source >= 0 && target >= 0 && source != target && net.connected(source, target);
+    }
+
+    /**
+     * Finds the vertex ids of a shortest path between two distinct
+     * connected vertices, and records the search states it used.
+     * @return the ids
+     */
+    private int[] search(Network net, int source, int target, RouteMode mode) {
+        LastSearch last = lastSearch.get();
+        RouteCache cache = net.routeCache;
+        if (cache != null) {
+            int[] cached = cache.get(source, target);
+            if (cached != null) {
+                last.record(NO_SEARCH);
+                return cached;
+            }
+        }
+
+        int[] ids;
+        switch (mode) {
+            case DIJKSTRA:
+                ids = net.pathFinder.shortestPath(source, target);
+                break;
+            case ASTAR:
+                ids = net.pathFinder.shortestPathAStar(source, target);
+                break;
+            case BIDIRECTIONAL:
+                ids = net.pathFinder.shortestPathBidirectional(source, target);
+                break;
+            case BIDIRECTIONAL_ASTAR:
+                ids = net.pathFinder.shortestPathBidirectionalAStar(source, target);
+                break;
+            case CONTRACTION_HIERARCHY:
+                ContractionHierarchy ch = net.hierarchy;
+                if (ch == null) {
+                    throw new IllegalStateException("No contraction hierarchy has been built or loaded");
+                }
+                ids = ch.shortestPath(source, target);
+                last.record(ch.lastStates());
+                break;
+            case ALT:
+                Landmarks alt = net.landmarks;
+                if (alt == null) {
+                    throw new IllegalStateException("No landmarks have been computed or loaded");
+                }
+                ids = net.pathFinder.shortestPathAStar(source, target, alt.toward(net.graph, target));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown route mode " + mode);
+        }
+        if (mode != RouteMode.CONTRACTION_HIERARCHY) {
+            last.record(net.pathFinder.lastStates());
+        }
+        if (cache != null) {
+            cache.put(ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the road distance in miles of a shortest path from a to b,
+     * the routeDistance of route(a, b), without building the path. Once
+     * hub labels have been built or loaded this merges two short sorted
+     * arrays instead of searching, and the result is exact to float
+     * precision; otherwise it takes the route from the route cache if
+     * there is one, or searches the contraction hierarchy if one has
+     * been built or loaded, and runs a bidirectional Dijkstra search if
+     * not.
+     * @param a One point in the graph.
+     * @param b Another point in the graph.
+     * @return The length of a shortest path between a and b, 0 if they
+     * are the same point.
+     * @throws InvalidAlgorithmParameterException if either point is not in
+     * the graph or a is not connected to b.
+     */
+    public double distance(Point a, Point b) throws InvalidAlgorithmParameterException {
+        Network net = network;
+        int source = net.graph.vertexOf(a);
+        int target = net.graph.vertexOf(b);
+        if (source < 0 || target < 0 || !net.connected(source, target)) {
+            throw new InvalidAlgorithmParameterException("No path between a and b");
+        }
+        if (source == target) {
+            return 0.0;
+        }
+        HubLabels labels = net.hubLabels;
+        if (labels != null) {
+            return labels.distance(source, target);
+        }
+        RouteCache cache = net.routeCache;
+        int[] ids = cache == null ? null : cache.get(source, target);
+        if (ids == null) {
+            ContractionHierarchy ch = net.hierarchy;
+            ids = ch != null ? ch.shortestPath(source, target)
+                    : net.pathFinder.shortestPathBidirectional(source, target);
+            if (cache != null) {
+                cache.put(ids);
+            }
+        }
+        return net.graph.pathLength(ids);
+    }
+
+    /**
+     * Returns the road distance from every source to every target, as
+     * distance would, for building dispatch tables. Uses hub labels if
+     * they have been built or loaded, otherwise a many-to-many search
+     * over the contraction hierarchy if there is one, otherwise one
+     * Dijkstra search per source; rows are computed in parallel.
+     * @param sources Points in the graph.
+     * @param targets Points in the graph.
+     * @return matrix[i][j], the distance in miles from sources.get(i) to
+     * targets.get(j), or Double.POSITIVE_INFINITY if they are not connected.
+     * @throws InvalidAlgorithmParameterException if any point is not in
+     * the graph.
+     */
+    public double[][] distanceMatrix(List<Point> sources, List<Point> targets)
+            throws InvalidAlgorithmParameterException {
+        Network net = network;
+        int[] sourceIds = toIds(net.graph, sources);
+        int[] targetIds = toIds(net.graph, targets);
+        HubLabels labels = net.hubLabels;
+        ContractionHierarchy ch = net.hierarchy;
+        if (labels == null && ch != null) {
+            return ch.distanceMatrix(sourceIds, targetIds);
+        }
+
+        double[][] matrix = new double[sourceIds.length][];
+        IntStream.range(0, sourceIds.length).parallel().forEach(i -> {
+            if (labels != null) {
+                matrix[i] = new double[targetIds.length];
+                for (int j = 0; j < targetIds.length; j++) {
+                    matrix[i][j] = labels.distance(sourceIds[i], targetIds[j]);
+                }
+            } else {
+                matrix[i] = net.pathFinder.distancesTo(sourceIds[i], targetIds);
+            }
+        });
+        return matrix;
+    }
+
+    private static int[] toIds(Graph graph, List<Point> points) throws InvalidAlgorithmParameterException {
+        int[] ids = new int[points.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = graph.vertexOf(points.get(i));
+            if (ids[i] < 0) {
+                throw new InvalidAlgorithmParameterException(points.get(i) + " is not in the graph");
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Finds shortest paths from source to every vertex within radius
+     * miles of road distance, in one search rather than one route per
+     * vertex.
+     * @param source A point in the graph.
+     * @param radius The cutoff in miles; Double.POSITIVE_INFINITY reaches
+     * every vertex connected to source.
+     * @return The distances and predecessors of the reached vertices, by
+     * vertex id; see getVertexId.
+     * @throws InvalidAlgorithmParameterException if source is not in the graph.
+     */
+    public ShortestPathTree shortestPathTree(Point source, double radius)
+            throws InvalidAlgorithmParameterException {
+        Network net = network;
+        int id = net.graph.vertexOf(source);
+        if (id < 0) {
+            throw new InvalidAlgorithmParameterException(source + " is not in the graph");
+        }
+        ShortestPathTree tree = net.pathFinder.shortestPathTree(id, radius);
+        lastSearch.get().record(net.pathFinder.lastStates());
+        return tree;
+    }
+
+    /**
+     * Returns the outline of the area reachable within the given road
+     * distance of source: the reachable points with a neighbor that is
+     * not, suitable for Visualize.drawPointSet.
+     * @param source A point in the graph.
+     * @param miles The road distance cutoff.
+     * @return The boundary points of the isochrone.
+     * @throws InvalidAlgorithmParameterException if source is not in the graph.
+     */
+    public Set<Point> isochrone(Point source, double miles) throws InvalidAlgorithmParameterException {
+        Network net = network;
+        int id = net.graph.vertexOf(source);
+        if (id < 0) {
+            throw new InvalidAlgorithmParameterException(source + " is not in the graph");
+        }
+        int[] boundary = net.pathFinder.shortestPathTree(id, miles).boundary();
+        Set<Point> points = new HashSet<>(boundary.length * 2);
+        for (int v : boundary) {
+            points.add(net.graph.point(v));
+        }
+        return points;
+    }
+
+    /**
+     * @param p A point, not necessarily in the graph.
+     * @return The vertex id of p as used by ShortestPathTree, or -1 if p
+     * is not in the graph.
+     */
+    public int getVertexId(Point p) {
+        return network.graph.vertexOf(p);
+    }
+
+    /**
+     * @param id A vertex id, as used by ShortestPathTree.
+     * @return The point with that id.
+     */
+    public Point getPoint(int id) {
+        return network.graph.point(id);
+    }
+
+    /**
+     * Sets the algorithm used by route(start, end). The default is A*.
+     * @param mode The search algorithm to use.
+     */
+    public void setRouteMode(RouteMode mode) {
+        routeMode = mode;
+    }
+
+    public RouteMode getRouteMode() {
+        return routeMode;
+    }
+
+    /**
+     * Keeps the routes found by route, routeAll and distance in a least
+     * recently used cache, so popular pairs are answered without a
+     * search. Start and end are snapped to vertex ids and order does not
+     * matter, so a route from b to a is answered from a cached route
+     * from a to b. Every route mode finds a shortest path, so cached
+     * routes are shared between modes. The cache lasts until disabled or
+     * until initialize loads another graph.
+     * @param maxEntries The most routes to keep.
+     * @param maxBytes The most memory, estimated, to spend on routes.
+     */
+    public void enableRouteCache(int maxEntries, long maxBytes) {
+        network.routeCache = new RouteCache(maxEntries, maxBytes);
+    }
+
+    public void disableRouteCache() {
+        network.routeCache = null;
+    }
+
+    /**
+     * @return The route cache with its hit, miss and eviction counts, or
+     * null if caching is disabled
+     */
+    public RouteCache getRouteCache() {
+        return network.routeCache;
+    }
+
+    /**
+     * @return The number of vertices the most recent route search on the
+     * calling thread removed from its queue, 0 if the route was cached
+     */
+    public int lastSettledCount() {
+        return lastSearch.get().settled;
+    }
+
+    /**
+     * Reports the statistics of every route, routeAll, connected and
+     * nearestPoint call from now on to listener, for example a
+     * QueryHistograms. Without a listener, the default, queries are not
+     * timed unless Flight Recorder is recording their GraphEvents, and
+     * the only cost is one volatile read per call.
+     * @param listener The listener, or null to stop reporting.
+     */
+    public void setQueryListener(QueryListener listener) {
+        queryListener = listener;
+    }
+
+    public QueryListener getQueryListener() {
+        return queryListener;
+    }
+
+    /**
+     * Preprocesses the graph into a contraction hierarchy so that
+     * route can be called with RouteMode.CONTRACTION_HIERARCHY. Takes
+     * much longer than initialize; see also loadContractionHierarchy.
+     */
+    public void buildContractionHierarchy() {
+        Network net = network;
+        net.hierarchy = ContractionHierarchy.build(net.graph);
+    }
+
+    /**
+     * Loads a contraction hierarchy written by saveContractionHierarchy
+     * or by running ContractionHierarchy on the same .graph file.
+     * @param file a FileInputStream of the hierarchy file
+     * @throws IOException if the file cannot be read or was built from
+     * a different graph
+     */
+    public void loadContractionHierarchy(FileInputStream file) throws IOException {
+        Network net = network;
+        ContractionHierarchy loaded = ContractionHierarchy.load(file.getChannel());
+        if (!loaded.matches(net.graph)) {
+            throw new IOException("Contraction hierarchy was built for a different graph");
+        }
+        net.hierarchy = loaded;
+    }
+
+    /**
+     * Writes the current contraction hierarchy to a file.
+     * @param file the destination path
+     * @throws IOException if the file cannot be written
+     */
+    public void saveContractionHierarchy(String file) throws IOException {
+        ContractionHierarchy ch = network.hierarchy;
+        if (ch == null) {
+            throw new IllegalStateException("No contraction hierarchy has been built or loaded");
+        }
+        ch.write(Paths.get(file));
+    }
+
+    /**
+     * Chooses landmarks and computes their distance tables so that route
+     * can be called with RouteMode.ALT. Runs one Dijkstra search over the
+     * whole graph per landmark; see also loadLandmarks.
+     * @param count The number of landmarks, Landmarks.DEFAULT_COUNT if unsure
+     */
+    public void buildLandmarks(int count) {
+        Network net = network;
+        net.landmarks = Landmarks.select(net.graph, net.pathFinder, count);
+    }
+
+    /**
+     * Loads landmark tables written by saveLandmarks or by running
+     * Landmarks on the same .graph file.
+     * @param file a FileInputStream of the landmark file
+     * @throws IOException if the file cannot be read or was computed for
+     * a different graph
+     */
+    public void loadLandmarks(FileInputStream file) throws IOException {
+        Network net = network;
+        Landmarks loaded = Landmarks.load(file.getChannel());
+        if (!loaded.matches(net.graph)) {
+            throw new IOException("Landmarks were computed for a different graph");
+        }
+        net.landmarks = loaded;
+    }
+
+    /**
+     * Writes the current landmark tables to a file.
+     * @param file the destination path
+     * @throws IOException if the file cannot be written
+     */
+    public void saveLandmarks(String file) throws IOException {
+        Landmarks current = network.landmarks;
+        if (current == null) {
+            throw new IllegalStateException("No landmarks have been computed or loaded");
+        }
+        current.write(Paths.get(file));
+    }
+
+    /**
+     * Computes hub labels so that distance answers without searching,
+     * building a contraction hierarchy first if there is none. Takes
+     * longer than buildContractionHierarchy; see also loadHubLabels.
+     */
+    public void buildHubLabels() {
+        Network net = network;
+        ContractionHierarchy ch = net.hierarchy;
+        if (ch == null) {
+            ch = ContractionHierarchy.build(net.graph);
+            net.hierarchy = ch;
+        }
+        net.hubLabels = HubLabels.build(net.graph, ch);
+    }
+
+    /**
+     * Maps hub labels written by saveHubLabels or by running HubLabels
+     * on the same .graph file.
+     * @param file a FileInputStream of the label file
+     * @throws IOException if the file cannot be read or was built from
+     * a different graph
+     */
+    public void loadHubLabels(FileInputStream file) throws IOException {
+        Network net = network;
+        HubLabels loaded = HubLabels.load(file.getChannel());
+        if (!loaded.matches(net.graph)) {
+            throw new IOException("Hub labels were built for a different graph");
+        }
+        net.hubLabels = loaded;
+    }
+
+    /**
+     * Writes the current hub labels to a file.
+     * @param file the destination path
+     * @throws IOException if the file cannot be written
+     */
+    public void saveHubLabels(String file) throws IOException {
+        HubLabels current = network.hubLabels;
+        if (current == null) {
+            throw new IllegalStateException("No hub labels have been built or loaded");
+        }
+        current.write(Paths.get(file));
+    }
+
+    /**
+     * The search states of the last route search on a thread, valid
+     * until the thread searches again, and the number of vertices it
+     * settled, which stays valid after that.
+     */
+    private static final class LastSearch {
+        SearchState[] states = NO_SEARCH;
+        int settled;
+
+        void record(SearchState[] used) {
+            states = used;
+            settled = 0;
+            for (SearchState state : used) {
+                settled += state.settledCount();
+            }
+        }
+    }
+
+    /**
+     * Everything derived from one call to initialize. The graph, spatial
+     * index, component labels and path finder never change after
+     * construction, and each optional preprocessing result is published
+     * only once it is complete, so any number of threads can query a
+     * Network concurrently. Each public method reads the current Network
+     * once, so a query never mixes two graphs even if initialize is
+     * called again meanwhile, and preprocessing started on the old graph
+     * is never attached to the new one.
+     */
+    private static final class Network {
+        final Graph graph;
+        final KdTree index;
+        final PathFinder pathFinder;
+        volatile ContractionHierarchy hierarchy;
+        volatile Landmarks landmarks;
+        volatile HubLabels hubLabels;
+        volatile RouteCache routeCache;
+
+        Network(Graph graph) {
+            this.graph = graph;
+            this.index = graph.index();
+            this.pathFinder = new PathFinder(graph);
+        }
+
+        boolean connected(int source, int target) {
+            return graph.component(source) == graph.component(target);
+        }
+    }
+}
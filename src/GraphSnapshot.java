@@ -0,0 +1,238 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes precompiled binary snapshots of a Graph, so that a
+ * process can start answering queries without re-parsing the text
+ * .graph file. Snapshots are loaded with FileChannel.map and the graph
+ * reads its arrays directly from the mapping, so loading costs a few
+ * page faults rather than a copy of the graph onto the heap. Besides
+ * the graph itself a snapshot holds everything GraphProcessor derives
+ * from it at startup, the coordinate lookup table, the component
+ * labels and the k-d tree, so none of it is recomputed either.
+ *
+ * All values are little-endian. The layout is a 32 byte header
+ * (magic, version, vertex count, arc count, name byte count, lookup
+ * table slot count, flags, unused) followed by the sections arc
+ * weights and k-d tree bounds as doubles, then offsets, neighbors, name
+ * offsets, component labels, lookup table slots and k-d tree ids as
+ * ints, then the UTF-8 names and the k-d tree split flags as bytes.
+ * The coordinates, lat, lon, k-d tree lat and k-d tree lon, come right
+ * after the bounds as doubles, or when flag bit 0 is set right after
+ * the k-d tree ids as fixed-point microdegree ints (see Coordinates).
+ *
+ * Usage: java GraphSnapshot input.graph output.bgraph
+ */
+public class GraphSnapshot {
+    public static final int MAGIC = 0x48504752; // "RGPH"
+    public static final int VERSION = 3;
+    private static final int HEADER_BYTES = 32;
+    private static final int FIXED_POINT = 1;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java GraphSnapshot input.graph output.bgraph");
+            System.exit(1);
+        }
+        Graph graph;
+        try (FileInputStream in = new FileInputStream(args[0])) {
+            graph = GraphParser.parse(in);
+        }
+        write(graph, Paths.get(args[1]));
+    }
+
+    /**
+     * Writes graph to file in the snapshot format, replacing any
+     * existing file.
+     * @param graph the graph to write
+     * @param file the destination
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Graph graph, Path file) throws IOException {
+        int n = graph.size();
+        int arcs = graph.arcCount();
+        int nameBytes = graph.nameBuffer().remaining();
+        IntBuffer slots = graph.ids().slotBuffer();
+        KdTree index = graph.index();
+        boolean fixed = graph.coordinates().isFixedPoint() && index.coordinates().isFixedPoint();
+        long size = size(n, arcs, nameBytes, slots.remaining(), fixed);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Graph too large for a snapshot: " + size + " bytes");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(arcs).putInt(nameBytes).putInt(slots.remaining())
+                    .putInt(fixed ? FIXED_POINT : 0).putInt(0);
+            put(out, graph.weightBuffer());
+            put(out, DoubleBuffer.wrap(index.bounds()));
+            if (!fixed) {
+                put(out, graph.coordinates());
+                put(out, index.coordinates());
+            }
+            put(out, graph.offsetBuffer());
+            put(out, graph.neighborBuffer());
+            put(out, graph.nameOffsetBuffer());
+            put(out, graph.componentBuffer());
+            put(out, slots);
+            put(out, index.idBuffer());
+            if (fixed) {
+                put(out, graph.coordinates().fixedLatBuffer());
+                put(out, graph.coordinates().fixedLonBuffer());
+                put(out, index.coordinates().fixedLatBuffer());
+                put(out, index.coordinates().fixedLonBuffer());
+            }
+            out.put(graph.nameBuffer());
+            out.put(index.splitBuffer());
+            out.force();
+        }
+    }
+
+    /**
+     * @param channel a channel positioned at the start of a graph file
+     * @return true if the channel holds a snapshot rather than a text .graph
+     * @throws IOException if the channel cannot be read
+     */
+    public static boolean isSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        long start = channel.position();
+        while (magic.hasRemaining() && channel.read(magic, start + magic.position()) > 0) {
+            // keep reading
+        }
+        return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Maps the snapshot at file and returns a graph backed by the mapping.
+     * @param file the snapshot
+     * @return the graph stored in file
+     * @throws IOException if the file cannot be read or is not a snapshot
+     * of the current version
+     */
+    public static Graph load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(channel);
+        }
+    }
+
+    /**
+     * Maps the snapshot starting at the current position of channel. The
+     * graph stays valid after the channel is closed.
+     * @param channel a channel over a snapshot
+     * @return the graph stored in the snapshot
+     * @throws IOException if the channel cannot be read or does not hold a
+     * snapshot of the current version
+     */
+    public static Graph load(FileChannel channel) throws IOException {
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Not a graph snapshot");
+        }
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a graph snapshot");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version
+                    + ", expected " + VERSION + "; recompile the snapshot");
+        }
+        int n = in.getInt();
+        int arcs = in.getInt();
+        int nameBytes = in.getInt();
+        int slots = in.getInt();
+        int flags = in.getInt();
+        boolean fixed = (flags & FIXED_POINT) != 0;
+        if (n < 0 || arcs < 0 || nameBytes < 0 || slots < 0 || Integer.bitCount(slots) != 1
+                || (flags & ~FIXED_POINT) != 0 || size(n, arcs, nameBytes, slots, fixed) != size) {
+            throw new IOException("Corrupt graph snapshot");
+        }
+
+        int at = HEADER_BYTES;
+        ByteBuffer weights = section(in, at, 8 * arcs);
+        ByteBuffer bounds = section(in, at += 8 * arcs, 8 * 4);
+        at += 8 * 4;
+        Coordinates coordinates = null;
+        Coordinates treeCoordinates = null;
+        if (!fixed) {
+            coordinates = new Coordinates(section(in, at, 8 * n).asDoubleBuffer(),
+                    section(in, at += 8 * n, 8 * n).asDoubleBuffer());
+            treeCoordinates = new Coordinates(section(in, at += 8 * n, 8 * n).asDoubleBuffer(),
+                    section(in, at += 8 * n, 8 * n).asDoubleBuffer());
+            at += 8 * n;
+        }
+        ByteBuffer offsets = section(in, at, 4 * (n + 1));
+        ByteBuffer neighbors = section(in, at += 4 * (n + 1), 4 * arcs);
+        ByteBuffer nameOffsets = section(in, at += 4 * arcs, 4 * (n + 1));
+        ByteBuffer components = section(in, at += 4 * (n + 1), 4 * n);
+        ByteBuffer table = section(in, at += 4 * n, 4 * slots);
+        ByteBuffer treeIds = section(in, at += 4 * slots, 4 * n);
+        at += 4 * n;
+        if (fixed) {
+            coordinates = new Coordinates(section(in, at, 4 * n).asIntBuffer(),
+                    section(in, at += 4 * n, 4 * n).asIntBuffer());
+            treeCoordinates = new Coordinates(section(in, at += 4 * n, 4 * n).asIntBuffer(),
+                    section(in, at += 4 * n, 4 * n).asIntBuffer());
+            at += 4 * n;
+        }
+        ByteBuffer names = section(in, at, nameBytes);
+        ByteBuffer treeSplit = section(in, at + nameBytes, n);
+
+        double[] box = new double[4];
+        bounds.asDoubleBuffer().get(box);
+        KdTree index = new KdTree(treeIds.asIntBuffer(), treeCoordinates, treeSplit, box);
+        return new Graph(coordinates, offsets.asIntBuffer(),
+                neighbors.asIntBuffer(), weights.asDoubleBuffer(), nameOffsets.asIntBuffer(), names,
+                new CoordinateTable(table.asIntBuffer()), components.asIntBuffer(), index);
+    }
+
+    private static long size(int n, int arcs, int nameBytes, int slots, boolean fixed) {
+        return HEADER_BYTES + 8L * (arcs + 4) + (fixed ? 4L : 8L) * 4L * n
+                + 4L * (2L * (n + 1) + arcs + 2L * n + slots) + nameBytes + n;
+    }
+
+    private static ByteBuffer section(ByteBuffer in, int offset, int length) {
+        return in.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void put(ByteBuffer out, DoubleBuffer values) {
+        int length = values.remaining();
+        out.asDoubleBuffer().put(values);
+        out.position(out.position() + 8 * length);
+    }
+
+    /**
+     * Writes the latitudes and then the longitudes of coordinates as
+     * doubles, however they are stored.
+     */
+    private static void put(ByteBuffer out, Coordinates coordinates) {
+        int n = coordinates.size();
+        DoubleBuffer values = out.asDoubleBuffer();
+        for (int i = 0; i < n; i++) {
+            values.put(coordinates.lat(i));
+        }
+        for (int i = 0; i < n; i++) {
+            values.put(coordinates.lon(i));
+        }
+        out.position(out.position() + 16 * n);
+    }
+
+    private static void put(ByteBuffer out, IntBuffer values) {
+        int length = values.remaining();
+        out.asIntBuffer().put(values);
+        out.position(out.position() + 4 * length);
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Hub labels for answering road distance queries without searching.
+ * Every vertex v has a label: a list of hubs h with the distance d(v, h).
+ * Labels satisfy the cover property that for any two connected vertices
+ * some hub on a shortest path between them appears in both labels, so
+ * their distance is the minimum of d(s, h) + d(h, t) over common hubs,
+ * found by merging two sorted arrays.
+ *
+ * Labels are derived from a ContractionHierarchy top-down: the label of
+ * v is v itself plus the labels of its upward neighbors shifted by the
+ * arc weight, after which entries that the labels of higher ranked
+ * vertices already cover with a shorter distance are pruned. Hubs are
+ * identified by their rank and kept in increasing order; distances are
+ * stored as floats.
+ *
+ * Usage: java HubLabels input.graph output.hub
+ */
+public class HubLabels {
+    public static final int MAGIC = 0x42554852; // "RHUB"
+    public static final int VERSION = 2;
+    private static final int HEADER_BYTES = 24;
+
+    private final int graphArcs;
+    private final int graphChecksum;
+    private final IntBuffer offsets;
+    private final IntBuffer hubs;
+    private final FloatBuffer distances;
+
+    private HubLabels(int graphArcs, int graphChecksum, IntBuffer offsets, IntBuffer hubs,
+            FloatBuffer distances) {
+        this.graphArcs = graphArcs;
+        this.graphChecksum = graphChecksum;
+        this.offsets = offsets;
+        this.hubs = hubs;
+        this.distances = distances;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java HubLabels input.graph output.hub");
+            System.exit(1);
+        }
+        Graph graph;
+        try (FileInputStream in = new FileInputStream(args[0])) {
+            FileChannel channel = in.getChannel();
+            graph = GraphSnapshot.isSnapshot(channel) ? GraphSnapshot.load(channel) : GraphParser.parse(in);
+        }
+        build(graph, ContractionHierarchy.build(graph)).write(Paths.get(args[1]));
+    }
+
+    /**
+     * @return the number of labeled vertices
+     */
+    public int size() {
+        return offsets.limit() - 1;
+    }
+
+    /**
+     * @return the total number of label entries over all vertices
+     */
+    public int entryCount() {
+        return hubs.limit();
+    }
+
+    /**
+     * @return true if these labels were built from graph, judging by its
+     * shape and Graph.checksum
+     */
+    public boolean matches(Graph graph) {
+        return graph.size() == size() && graph.arcCount() == graphArcs
+                && graph.checksum() == graphChecksum;
+    }
+
+    /**
+     * Builds labels from a hierarchy over graph.
+     * @param graph the graph
+     * @param hierarchy a contraction hierarchy of graph
+     * @return the labels
+     */
+    public static HubLabels build(Graph graph, ContractionHierarchy hierarchy) {
+        int n = hierarchy.size();
+        int[] byRank = new int[n];
+        for (int v = 0; v < n; v++) {
+            byRank[hierarchy.rank(v)] = v;
+        }
+
+        int[][] labelHubs = new int[n][];
+        double[][] labelDistances = new double[n][];
+        double[] tentative = new double[n];
+        Arrays.fill(tentative, Double.POSITIVE_INFINITY);
+        int[] touched = new int[n];
+        long total = 0;
+
+        for (int r = n - 1; r >= 0; r--) {
+            int v = byRank[r];
+            int count = 0;
+            tentative[r] = 0.0;
+            touched[count++] = r;
+            for (int a = hierarchy.firstUpArc(v); a < hierarchy.endUpArc(v); a++) {
+                int u = hierarchy.upTarget(a);
+                double w = hierarchy.upWeight(a);
+                int[] uHubs = labelHubs[u];
+                double[] uDistances = labelDistances[u];
+                for (int i = 0; i < uHubs.length; i++) {
+                    int hub = uHubs[i];
+                    double d = w + uDistances[i];
+                    if (tentative[hub] == Double.POSITIVE_INFINITY) {
+                        touched[count++] = hub;
+                    }
+                    if (d < tentative[hub]) {
+                        tentative[hub] = d;
+                    }
+                }
+            }
+            Arrays.sort(touched, 0, count);
+            int[] vHubs = new int[count];
+            double[] vDistances = new double[count];
+            for (int i = 0; i < count; i++) {
+                vHubs[i] = touched[i];
+                vDistances[i] = tentative[touched[i]];
+                tentative[touched[i]] = Double.POSITIVE_INFINITY;
+            }
+
+            // Drop entries whose distance the finished label of the hub
+            // beats through another hub of v
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int hub = vHubs[i];
+                if (hub != r) {
+                    int h = byRank[hub];
+                    double covered = query(vHubs, vDistances, count, labelHubs[h], labelDistances[h]);
+                    if (covered < vDistances[i]) {
+                        continue;
+                    }
+                }
+                vHubs[kept] = vHubs[i];
+                vDistances[kept] = vDistances[i];
+                kept++;
+            }
+            labelHubs[v] = Arrays.copyOf(vHubs, kept);
+            labelDistances[v] = Arrays.copyOf(vDistances, kept);
+            total += kept;
+        }
+
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many label entries: " + total);
+        }
+        int[] offsets = new int[n + 1];
+        int[] hubs = new int[(int) total];
+        float[] distances = new float[(int) total];
+        for (int v = 0; v < n; v++) {
+            int length = labelHubs[v].length;
+            offsets[v + 1] = offsets[v] + length;
+            System.arraycopy(labelHubs[v], 0, hubs, offsets[v], length);
+            for (int i = 0; i < length; i++) {
+                distances[offsets[v] + i] = (float) labelDistances[v][i];
+            }
+        }
+        return new HubLabels(graph.arcCount(), graph.checksum(), IntBuffer.wrap(offsets),
+                IntBuffer.wrap(hubs), FloatBuffer.wrap(distances));
+    }
+
+    /**
+     * Merges two labels under construction.
+     */
+    private static double query(int[] aHubs, double[] aDistances, int aLength, int[] bHubs, double[] bDistances) {
+        double best = Double.POSITIVE_INFINITY;
+        int i = 0;
+        int j = 0;
+        while (i < aLength && j < bHubs.length) {
+            if (aHubs[i] < bHubs[j]) {
+                i++;
+            } else if (aHubs[i] > bHubs[j]) {
+                j++;
+            } else {
+                best = Math.min(best, aDistances[i++] + bDistances[j++]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param s the id of one vertex
+     * @param t the id of another vertex
+     * @return the road distance in miles between s and t, accurate to
+     * float precision, or infinity if they are not connected
+     */
+    public double distance(int s, int t) {
+        int i = offsets.get(s);
+        int iEnd = offsets.get(s + 1);
+        int j = offsets.get(t);
+        int jEnd = offsets.get(t + 1);
+        double best = Double.POSITIVE_INFINITY;
+        while (i < iEnd && j < jEnd) {
+            int a = hubs.get(i);
+            int b = hubs.get(j);
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                double d = (double) distances.get(i++) + distances.get(j++);
+                if (d < best) {
+                    best = d;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes the labels to file, replacing any existing file. The layout
+     * is a little-endian 24 byte header (magic, version, vertex count,
+     * entry count, arc count and checksum of the source graph) followed by
+     * the label offsets and hub ranks as ints and the distances as floats.
+     * @param file the destination
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        int n = size();
+        int entries = entryCount();
+        long size = HEADER_BYTES + 4L * (n + 1) + 8L * entries;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Hub labels too large to write: " + size + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(entries).putInt(graphArcs).putInt(graphChecksum);
+            out.asIntBuffer().put(offsets.duplicate());
+            out.position(out.position() + 4 * (n + 1));
+            out.asIntBuffer().put(hubs.duplicate());
+            out.position(out.position() + 4 * entries);
+            out.asFloatBuffer().put(distances.duplicate());
+            out.force();
+        }
+    }
+
+    /**
+     * Maps labels written by write.
+     * @param channel a channel positioned at the start of the labels
+     * @return the labels, which stay valid after channel is closed
+     * @throws IOException if the channel cannot be read or does not hold
+     * hub labels of the current version
+     */
+    public static HubLabels load(FileChannel channel) throws IOException {
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Not a hub label file");
+        }
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a hub label file");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported hub label version " + version
+                    + ", expected " + VERSION + "; rebuild the labels");
+        }
+        int n = in.getInt();
+        int entries = in.getInt();
+        int graphArcs = in.getInt();
+        int graphChecksum = in.getInt();
+        if (n < 0 || entries < 0 || HEADER_BYTES + 4L * (n + 1) + 8L * entries != size) {
+            throw new IOException("Corrupt hub label file");
+        }
+        int at = HEADER_BYTES;
+        IntBuffer offsets = in.slice(at, 4 * (n + 1)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        IntBuffer hubs = in.slice(at += 4 * (n + 1), 4 * entries).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        FloatBuffer distances = in.slice(at + 4 * entries, 4 * entries).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        return new HubLabels(graphArcs, graphChecksum, offsets, hubs, distances);
+    }
+}
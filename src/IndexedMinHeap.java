@@ -0,0 +1,174 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of vertex ids keyed by double priorities, with a
+ * position index so that a vertex's key can be decreased in place
+ * instead of inserting a duplicate entry. Ids must lie in
+ * [0, capacity). clear() costs time proportional to the entries still
+ * in the heap, not to the capacity, so one heap can be reused across
+ * many searches. The heap also counts its inserts, decreases and pops
+ * and its largest size since the last clear, for query statistics.
+ */
+public class IndexedMinHeap {
+    private final int[] vertices;
+    private final double[] keys;
+    private final int[] position;
+    private int size;
+    private int pushes;
+    private int decreases;
+    private int pops;
+    private int maxSize;
+
+    /**
+     * @param capacity one more than the largest id that will be stored
+     */
+    public IndexedMinHeap(int capacity) {
+        vertices = new int[capacity];
+        keys = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if v is currently in the heap
+     */
+    public boolean contains(int v) {
+        return position[v] >= 0;
+    }
+
+    /**
+     * @return the smallest key in the heap; the heap must not be empty
+     */
+    public double minKey() {
+        return keys[0];
+    }
+
+    /**
+     * @return the vertex with the smallest key; the heap must not be empty
+     */
+    public int peek() {
+        return vertices[0];
+    }
+
+    /**
+     * Inserts v with the given key, or lowers its key if v is already in
+     * the heap with a larger one.
+     * @return true if v was inserted rather than updated
+     */
+    public boolean pushOrDecrease(int v, double key) {
+        int i = position[v];
+        boolean inserted = i < 0;
+        if (inserted) {
+            i = size++;
+            pushes++;
+            if (size > maxSize) {
+                maxSize = size;
+            }
+        } else if (key >= keys[i]) {
+            return false;
+        } else {
+            decreases++;
+        }
+        siftUp(i, v, key);
+        return inserted;
+    }
+
+    /**
+     * Removes and returns the vertex with the smallest key.
+     * The heap must not be empty.
+     */
+    public int pop() {
+        int min = vertices[0];
+        position[min] = -1;
+        size--;
+        pops++;
+        if (size > 0) {
+            siftDown(0, vertices[size], keys[size]);
+        }
+        return min;
+    }
+
+    /**
+     * Removes every entry and zeroes the operation counts.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[vertices[i]] = -1;
+        }
+        size = 0;
+        pushes = 0;
+        decreases = 0;
+        pops = 0;
+        maxSize = 0;
+    }
+
+    /**
+     * @return the number of vertices inserted since the last clear
+     */
+    public int pushCount() {
+        return pushes;
+    }
+
+    /**
+     * @return the number of keys lowered in place since the last clear
+     */
+    public int decreaseCount() {
+        return decreases;
+    }
+
+    /**
+     * @return the number of vertices popped since the last clear
+     */
+    public int popCount() {
+        return pops;
+    }
+
+    /**
+     * @return the largest size the heap has reached since the last clear
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    private void siftUp(int i, int v, double key) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(i, vertices[parent], keys[parent]);
+            i = parent;
+        }
+        place(i, v, key);
+    }
+
+    private void siftDown(int i, int v, double key) {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            place(i, vertices[child], keys[child]);
+            i = child;
+        }
+        place(i, v, key);
+    }
+
+    private void place(int i, int v, double key) {
+        vertices[i] = v;
+        keys[i] = key;
+        position[v] = i;
+    }
+}
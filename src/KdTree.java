@@ -0,0 +1,455 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Static 2-d tree over the vertices of a Graph supporting nearest
+ * vertex queries under the Point.distance metric.
+ * The tree is implicit: vertices are permuted so that the subtree over
+ * positions [lo, hi) has its root at mid = (lo + hi) / 2, with the left
+ * subtree in [lo, mid) and the right subtree in [mid + 1, hi). Each node
+ * splits on latitude or longitude, whichever spans more miles.
+ * Subtrees are pruned using a lower bound on Point.distance from the
+ * query to the bounding box of the subtree, so results are exactly
+ * those of a linear scan, with ties broken toward the smaller vertex id.
+ */
+public class KdTree {
+    private static final double EARTH_RADIUS = 3963.2;
+    // Allows for rounding differences between the box bound and Point.distance
+    private static final double BOUND_SLACK = 1 - 1e-9;
+
+    private final IntBuffer ids;
+    private final Coordinates coordinates;
+    private final ByteBuffer splitOnLat;
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+
+    /**
+     * Builds a tree over every vertex of graph.
+     * @param graph the graph whose vertices are indexed
+     */
+    public KdTree(Graph graph) {
+        Builder builder = new Builder(graph);
+        ids = IntBuffer.wrap(builder.ids);
+        coordinates = Coordinates.of(builder.lat, builder.lon);
+        splitOnLat = ByteBuffer.wrap(builder.splitOnLat);
+        minLat = builder.minLat;
+        maxLat = builder.maxLat;
+        minLon = builder.minLon;
+        maxLon = builder.maxLon;
+    }
+
+    /**
+     * Wraps a tree previously built and saved, for example in a
+     * GraphSnapshot.
+     * @param ids vertex ids in tree order
+     * @param coordinates vertex coordinates in tree order
+     * @param splitOnLat 1 where the node at that position splits on
+     * latitude, 0 where it splits on longitude
+     * @param bounds minLat, maxLat, minLon and maxLon over all vertices
+     */
+    KdTree(IntBuffer ids, Coordinates coordinates, ByteBuffer splitOnLat, double[] bounds) {
+        this.ids = ids;
+        this.coordinates = coordinates;
+        this.splitOnLat = splitOnLat;
+        this.minLat = bounds[0];
+        this.maxLat = bounds[1];
+        this.minLon = bounds[2];
+        this.maxLon = bounds[3];
+    }
+
+    /**
+     * @return the number of indexed vertices
+     */
+    public int size() {
+        return ids.limit();
+    }
+
+    IntBuffer idBuffer() {
+        return ids.duplicate();
+    }
+
+    Coordinates coordinates() {
+        return coordinates;
+    }
+
+    ByteBuffer splitBuffer() {
+        return splitOnLat.duplicate();
+    }
+
+    double[] bounds() {
+        return new double[] {minLat, maxLat, minLon, maxLon};
+    }
+
+    private boolean splitsOnLat(int i) {
+        return splitOnLat.get(i) != 0;
+    }
+
+    /**
+     * Finds the vertex closest in Point.distance to the given coordinates.
+     * Safe to call from several threads at once.
+     * @param pLat latitude of the query point
+     * @param pLon longitude of the query point
+     * @return the id of the nearest vertex, or -1 if the tree is empty
+     */
+    public int nearest(double pLat, double pLon) {
+        Query q = new Query(pLat, pLon);
+        nearest(q, 0, ids.limit(), minLat, maxLat, minLon, maxLon);
+        return q.best;
+    }
+
+    private void nearest(Query q, int lo, int hi, double loLat, double hiLat, double loLon, double hiLon) {
+        if (lo >= hi || q.lowerBound(loLat, hiLat, loLon, hiLon) * BOUND_SLACK > q.bestDistance) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double d = Point.distance(coordinates.lat(mid), coordinates.lon(mid), q.lat, q.lon);
+        if (d < q.bestDistance || (d == q.bestDistance && ids.get(mid) < q.best)) {
+            q.best = ids.get(mid);
+            q.bestDistance = d;
+        }
+        if (hi - lo == 1) {
+            return;
+        }
+        if (splitsOnLat(mid)) {
+            double split = coordinates.lat(mid);
+            if (q.lat < split) {
+                nearest(q, lo, mid, loLat, split, loLon, hiLon);
+                nearest(q, mid + 1, hi, split, hiLat, loLon, hiLon);
+            } else {
+                nearest(q, mid + 1, hi, split, hiLat, loLon, hiLon);
+                nearest(q, lo, mid, loLat, split, loLon, hiLon);
+            }
+        } else {
+            double split = coordinates.lon(mid);
+            if (q.lon < split) {
+                nearest(q, lo, mid, loLat, hiLat, loLon, split);
+                nearest(q, mid + 1, hi, loLat, hiLat, split, hiLon);
+            } else {
+                nearest(q, mid + 1, hi, loLat, hiLat, split, hiLon);
+                nearest(q, lo, mid, loLat, hiLat, loLon, split);
+            }
+        }
+    }
+
+    /**
+     * Finds the k vertices closest in Point.distance to the given
+     * coordinates. Safe to call from several threads at once.
+     * @param pLat latitude of the query point
+     * @param pLon longitude of the query point
+     * @param k the number of vertices wanted
+     * @return the ids of the min(k, size()) nearest vertices, ordered by
+     * increasing distance and then by id
+     */
+    public int[] nearest(double pLat, double pLon, int k) {
+        ResultHeap results = new ResultHeap(Math.max(0, Math.min(k, ids.limit())));
+        if (results.capacity > 0) {
+            nearest(new Query(pLat, pLon), results, 0, ids.limit(), minLat, maxLat, minLon, maxLon);
+        }
+        return results.toSortedIds();
+    }
+
+    private void nearest(Query q, ResultHeap results, int lo, int hi,
+            double loLat, double hiLat, double loLon, double hiLon) {
+        if (lo >= hi || (results.isFull()
+                && q.lowerBound(loLat, hiLat, loLon, hiLon) * BOUND_SLACK > results.maxDistance())) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        results.offer(ids.get(mid), Point.distance(coordinates.lat(mid), coordinates.lon(mid), q.lat, q.lon));
+        if (hi - lo == 1) {
+            return;
+        }
+        if (splitsOnLat(mid)) {
+            double split = coordinates.lat(mid);
+            if (q.lat < split) {
+                nearest(q, results, lo, mid, loLat, split, loLon, hiLon);
+                nearest(q, results, mid + 1, hi, split, hiLat, loLon, hiLon);
+            } else {
+                nearest(q, results, mid + 1, hi, split, hiLat, loLon, hiLon);
+                nearest(q, results, lo, mid, loLat, split, loLon, hiLon);
+            }
+        } else {
+            double split = coordinates.lon(mid);
+            if (q.lon < split) {
+                nearest(q, results, lo, mid, loLat, hiLat, loLon, split);
+                nearest(q, results, mid + 1, hi, loLat, hiLat, split, hiLon);
+            } else {
+                nearest(q, results, mid + 1, hi, loLat, hiLat, split, hiLon);
+                nearest(q, results, lo, mid, loLat, hiLat, loLon, split);
+            }
+        }
+    }
+
+    /**
+     * Finds every vertex within the given Point.distance of the given
+     * coordinates. Safe to call from several threads at once.
+     * @param pLat latitude of the query point
+     * @param pLon longitude of the query point
+     * @param miles the search radius, inclusive
+     * @return the ids of the vertices found, ordered by increasing
+     * distance and then by id
+     */
+    public int[] within(double pLat, double pLon, double miles) {
+        ResultHeap results = new ResultHeap(Integer.MAX_VALUE);
+        if (miles >= 0) {
+            within(new Query(pLat, pLon), miles, results, 0, ids.limit(), minLat, maxLat, minLon, maxLon);
+        }
+        return results.toSortedIds();
+    }
+
+    private void within(Query q, double miles, ResultHeap results, int lo, int hi,
+            double loLat, double hiLat, double loLon, double hiLon) {
+        if (lo >= hi || q.lowerBound(loLat, hiLat, loLon, hiLon) * BOUND_SLACK > miles) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double d = Point.distance(coordinates.lat(mid), coordinates.lon(mid), q.lat, q.lon);
+        if (d <= miles) {
+            results.offer(ids.get(mid), d);
+        }
+        if (hi - lo == 1) {
+            return;
+        }
+        if (splitsOnLat(mid)) {
+            within(q, miles, results, lo, mid, loLat, coordinates.lat(mid), loLon, hiLon);
+            within(q, miles, results, mid + 1, hi, coordinates.lat(mid), hiLat, loLon, hiLon);
+        } else {
+            within(q, miles, results, lo, mid, loLat, hiLat, loLon, coordinates.lon(mid));
+            within(q, miles, results, mid + 1, hi, loLat, hiLat, coordinates.lon(mid), hiLon);
+        }
+    }
+
+    /**
+     * Permutes copies of the coordinates into tree order. Each subtree
+     * is arranged by a quickselect on the coordinate its root splits on.
+     */
+    private static class Builder {
+        final int[] ids;
+        final double[] lat;
+        final double[] lon;
+        final byte[] splitOnLat;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+
+        Builder(Graph graph) {
+            int n = graph.size();
+            ids = new int[n];
+            lat = new double[n];
+            lon = new double[n];
+            splitOnLat = new byte[n];
+            for (int v = 0; v < n; v++) {
+                ids[v] = v;
+                lat[v] = graph.lat(v);
+                lon[v] = graph.lon(v);
+                minLat = Math.min(minLat, lat[v]);
+                maxLat = Math.max(maxLat, lat[v]);
+                minLon = Math.min(minLon, lon[v]);
+                maxLon = Math.max(maxLon, lon[v]);
+            }
+            build(0, n, minLat, maxLat, minLon, maxLon);
+        }
+
+        private void build(int lo, int hi, double loLat, double hiLat, double loLon, double hiLon) {
+            if (hi - lo <= 1) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            double latMiles = hiLat - loLat;
+            double lonMiles = (hiLon - loLon) * Math.cos(Math.toRadians((loLat + hiLat) / 2));
+            boolean byLat = latMiles >= lonMiles;
+            splitOnLat[mid] = (byte) (byLat ? 1 : 0);
+            select(lo, hi, mid, byLat);
+            if (byLat) {
+                build(lo, mid, loLat, lat[mid], loLon, hiLon);
+                build(mid + 1, hi, lat[mid], hiLat, loLon, hiLon);
+            } else {
+                build(lo, mid, loLat, hiLat, loLon, lon[mid]);
+                build(mid + 1, hi, loLat, hiLat, lon[mid], hiLon);
+            }
+        }
+
+        private double key(int i, boolean byLat) {
+            return byLat ? lat[i] : lon[i];
+        }
+
+        /**
+         * Rearranges positions [lo, hi) so that position k holds the element
+         * that would be there if sorted by the split coordinate, with no
+         * larger element before it and no smaller element after it.
+         */
+        private void select(int lo, int hi, int k, boolean byLat) {
+            int left = lo;
+            int right = hi - 1;
+            while (left < right) {
+                double pivot = key((left + right) >>> 1, byLat);
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (key(i, byLat) < pivot) {
+                        i++;
+                    }
+                    while (key(j, byLat) > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (k <= j) {
+                    right = j;
+                } else if (k >= i) {
+                    left = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double t = lat[i];
+            lat[i] = lat[j];
+            lat[j] = t;
+            t = lon[i];
+            lon[i] = lon[j];
+            lon[j] = t;
+        }
+    }
+
+    /**
+     * Max-heap of (distance, id) pairs holding at most capacity entries;
+     * once full, offering a pair smaller than the maximum replaces it.
+     */
+    private static class ResultHeap {
+        final int capacity;
+        int[] heapIds;
+        double[] heapDistances;
+        int size;
+
+        ResultHeap(int capacity) {
+            this.capacity = capacity;
+            int initial = Math.min(capacity, 16);
+            heapIds = new int[initial];
+            heapDistances = new double[initial];
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        double maxDistance() {
+            return heapDistances[0];
+        }
+
+        private boolean greater(int i, int j) {
+            return heapDistances[i] > heapDistances[j]
+                    || (heapDistances[i] == heapDistances[j] && heapIds[i] > heapIds[j]);
+        }
+
+        void offer(int id, double distance) {
+            if (size == capacity) {
+                if (distance > heapDistances[0] || (distance == heapDistances[0] && id > heapIds[0])) {
+                    return;
+                }
+                heapIds[0] = id;
+                heapDistances[0] = distance;
+                siftDown(0, size);
+                return;
+            }
+            if (size == heapIds.length) {
+                int grown = (int) Math.min((long) capacity, 2L * size);
+                heapIds = Arrays.copyOf(heapIds, grown);
+                heapDistances = Arrays.copyOf(heapDistances, grown);
+            }
+            int i = size++;
+            heapIds[i] = id;
+            heapDistances[i] = distance;
+            while (i > 0 && greater(i, (i - 1) / 2)) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i, int end) {
+            while (2 * i + 1 < end) {
+                int child = 2 * i + 1;
+                if (child + 1 < end && greater(child + 1, child)) {
+                    child++;
+                }
+                if (!greater(child, i)) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int id = heapIds[i];
+            heapIds[i] = heapIds[j];
+            heapIds[j] = id;
+            double d = heapDistances[i];
+            heapDistances[i] = heapDistances[j];
+            heapDistances[j] = d;
+        }
+
+        /**
+         * Heap sorts the entries in place and returns their ids in
+         * increasing order.
+         */
+        int[] toSortedIds() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return Arrays.copyOf(heapIds, size);
+        }
+    }
+
+    /**
+     * The query point and best result found so far.
+     */
+    private static class Query {
+        final double lat;
+        final double lon;
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+
+        Query(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        /**
+         * A lower bound on Point.distance from the query point to any point
+         * in the given box. Point.distance scales the longitude difference by
+         * the cosine of the mean latitude, which over the box is smallest at
+         * one of the two extreme latitudes.
+         */
+        private double lowerBound(double loLat, double hiLat, double loLon, double hiLon) {
+            double dLat = Math.max(0, Math.max(loLat - lat, lat - hiLat));
+            double dLon = Math.max(0, Math.max(loLon - lon, lon - hiLon));
+            if (dLat == 0 && dLon == 0) {
+                return 0;
+            }
+            double cos = 0;
+            if (dLon > 0) {
+                double a = (loLat + lat) / 2;
+                double b = (hiLat + lat) / 2;
+                if (a >= -90 && b <= 90) {
+                    cos = Math.min(Math.cos(Math.toRadians(a)), Math.cos(Math.toRadians(b)));
+                }
+            }
+            double deltaX = EARTH_RADIUS * cos * Math.toRadians(dLon);
+            double deltaY = EARTH_RADIUS * Math.toRadians(dLat);
+            return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Landmark distance tables for ALT (A*, landmarks, triangle inequality)
+ * searches. For a landmark L, the triangle inequality gives
+ * |d(L, t) - d(L, v)| <= d(v, t) on an undirected graph, so the largest
+ * such difference over all landmarks is a lower bound on the road
+ * distance from v to t. Unlike the straight-line bound it accounts for
+ * detours around mountains, lakes and coastlines.
+ *
+ * Landmarks are chosen by farthest-point selection within the largest
+ * component. Distances are stored as floats, vertex-major, so the
+ * bounds for one vertex are contiguous.
+ *
+ * Usage: java Landmarks input.graph output.landmarks [count]
+ */
+public class Landmarks {
+    public static final int MAGIC = 0x4b4d4c52; // "RLMK"
+    public static final int VERSION = 2;
+    public static final int DEFAULT_COUNT = 16;
+    private static final int HEADER_BYTES = 24;
+
+    private final int graphArcs;
+    private final int graphChecksum;
+    private final IntBuffer landmarks;
+    private final FloatBuffer distances;
+    private final int count;
+
+    private Landmarks(int graphArcs, int graphChecksum, IntBuffer landmarks, FloatBuffer distances) {
+        this.graphArcs = graphArcs;
+        this.graphChecksum = graphChecksum;
+        this.landmarks = landmarks;
+        this.distances = distances;
+        this.count = landmarks.limit();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Usage: java Landmarks input.graph output.landmarks [count]");
+            System.exit(1);
+        }
+        Graph graph;
+        try (FileInputStream in = new FileInputStream(args[0])) {
+            FileChannel channel = in.getChannel();
+            graph = GraphSnapshot.isSnapshot(channel) ? GraphSnapshot.load(channel) : GraphParser.parse(in);
+        }
+        int count = args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_COUNT;
+        select(graph, new PathFinder(graph), count).write(Paths.get(args[1]));
+    }
+
+    /**
+     * Chooses up to count landmarks and computes their distance tables.
+     * The first landmark is the vertex farthest from an arbitrary vertex
+     * of the largest component; each further landmark is the vertex
+     * whose distance to its nearest chosen landmark is largest.
+     * @param graph the graph to preprocess
+     * @param pathFinder a PathFinder over graph
+     * @param count the number of landmarks wanted
+     * @return the landmarks
+     */
+    public static Landmarks select(Graph graph, PathFinder pathFinder, int count) {
+        int n = graph.size();
+        int[] component = graph.labelComponents();
+        int[] componentSize = new int[n + 1];
+        int largest = 0;
+        for (int v = 0; v < n; v++) {
+            if (++componentSize[component[v]] > componentSize[component[largest]]) {
+                largest = v;
+            }
+        }
+        count = Math.max(0, Math.min(count, n == 0 ? 0 : componentSize[component[largest]]));
+
+        int[] chosen = new int[count];
+        float[] table = new float[n * count];
+        double[] nearest = pathFinder.distancesFrom(largest);
+        for (int i = 0; i < count; i++) {
+            int next = largest;
+            for (int v = 0; v < n; v++) {
+                if (nearest[v] != Double.POSITIVE_INFINITY && nearest[v] > nearest[next]) {
+                    next = v;
+                }
+            }
+            chosen[i] = next;
+            double[] fromLandmark = pathFinder.distancesFrom(next);
+            for (int v = 0; v < n; v++) {
+                table[v * count + i] = (float) fromLandmark[v];
+                nearest[v] = i == 0 ? fromLandmark[v] : Math.min(nearest[v], fromLandmark[v]);
+            }
+        }
+        return new Landmarks(graph.arcCount(), graph.checksum(), IntBuffer.wrap(chosen), FloatBuffer.wrap(table));
+    }
+
+    /**
+     * @return the number of landmarks
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return the vertex id of landmark i
+     */
+    public int landmark(int i) {
+        return landmarks.get(i);
+    }
+
+    /**
+     * @return true if these tables were computed for graph, judging by its
+     * shape and Graph.checksum
+     */
+    public boolean matches(Graph graph) {
+        return distances.limit() == graph.size() * count && graph.arcCount() == graphArcs
+                && graph.checksum() == graphChecksum;
+    }
+
+    /**
+     * Returns a heuristic for searches toward target: the larger of the
+     * landmark bound and Graph.lowerBound, so vertices in components
+     * without landmarks still get a useful estimate. Both are lower
+     * bounds, so their maximum never overestimates either. Stored
+     * floats are rounded, so each landmark difference is reduced by one
+     * float ulp to keep the bound from overestimating.
+     * @param graph the graph these tables were computed for
+     * @param target the id of the vertex being searched for
+     * @return lower bounds on the road distance to target
+     */
+    public PathFinder.Heuristic toward(Graph graph, int target) {
+        float[] toTarget = new float[count];
+        for (int i = 0; i < count; i++) {
+            toTarget[i] = distances.get(target * count + i);
+        }
+        return v -> {
+            double bound = graph.lowerBound(v, target);
+            int base = v * count;
+            for (int i = 0; i < count; i++) {
+                float fromV = distances.get(base + i);
+                float t = toTarget[i];
+                if (fromV != Float.POSITIVE_INFINITY && t != Float.POSITIVE_INFINITY) {
+                    double difference = Math.abs((double) t - fromV) - Math.ulp(Math.max(t, fromV));
+                    if (difference > bound) {
+                        bound = difference;
+                    }
+                }
+            }
+            return bound;
+        };
+    }
+
+    /**
+     * Writes the tables to file, replacing any existing file. The layout
+     * is a little-endian 24 byte header (magic, version, vertex count,
+     * landmark count, arc count and checksum of the source graph)
+     * followed by the landmark ids as ints and the vertex-major distances
+     * as floats.
+     * @param file the destination
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        int n = count == 0 ? 0 : distances.limit() / count;
+        long size = HEADER_BYTES + 4L * count + 4L * distances.limit();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Landmark tables too large to write: " + size + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(count).putInt(graphArcs).putInt(graphChecksum);
+            out.asIntBuffer().put(landmarks.duplicate());
+            out.position(out.position() + 4 * count);
+            out.asFloatBuffer().put(distances.duplicate());
+            out.force();
+        }
+    }
+
+    /**
+     * Maps tables written by write.
+     * @param channel a channel positioned at the start of the tables
+     * @return the landmarks, which stay valid after channel is closed
+     * @throws IOException if the channel cannot be read or does not hold
+     * landmark tables of the current version
+     */
+    public static Landmarks load(FileChannel channel) throws IOException {
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Not a landmark file");
+        }
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a landmark file");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported landmark file version " + version
+                    + ", expected " + VERSION + "; recompute the landmarks");
+        }
+        int n = in.getInt();
+        int count = in.getInt();
+        int graphArcs = in.getInt();
+        int graphChecksum = in.getInt();
+        if (n < 0 || count < 0 || HEADER_BYTES + 4L * count + 4L * n * count != size) {
+            throw new IOException("Corrupt landmark file");
+        }
+        IntBuffer landmarks = in.slice(HEADER_BYTES, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        FloatBuffer distances = in.slice(HEADER_BYTES + 4 * count, 4 * n * count)
+                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        return new Landmarks(graphArcs, graphChecksum, landmarks, distances);
+    }
+}
@@ -0,0 +1,372 @@
+import java.util.Arrays;
+
+/**
+ * Point-to-point shortest path searches over a Graph. Each thread gets
+ * its own SearchStates, so one PathFinder can serve concurrent queries
+ * and a query allocates nothing proportional to the graph size beyond
+ * its first use on a thread.
+ */
+public class PathFinder {
+    private final Graph graph;
+    private final ThreadLocal<Workspace> workspaces;
+
+    public PathFinder(Graph graph) {
+        this.graph = graph;
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(graph.size()));
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source, stopping as soon as target
+     * is settled.
+     * @param source the id of the first vertex
+     * @param target the id of the last vertex
+     * @return the vertex ids of a shortest path [source, ..., target], or
+     * null if target is unreachable from source
+     */
+    public int[] shortestPath(int source, int target) {
+        return search(source, target, null);
+    }
+
+    /**
+     * Runs A* from source to target, ordering the queue by distance so
+     * far plus Graph.lowerBound to target, a straight line distance that
+     * provably never overestimates the remaining road distance, so the
+     * path is a shortest one while far fewer vertices are settled.
+     * @param source the id of the first vertex
+     * @param target the id of the last vertex
+     * @return the vertex ids of a shortest path [source, ..., target], or
+     * null if target is unreachable from source
+     */
+    public int[] shortestPathAStar(int source, int target) {
+        return search(source, target, v -> graph.lowerBound(v, target));
+    }
+
+    /**
+     * Runs A* from source to target with the given heuristic, which must
+     * never overestimate the road distance from a vertex to target.
+     * @param source the id of the first vertex
+     * @param target the id of the last vertex
+     * @param heuristic lower bounds on the distance to target
+     * @return the vertex ids of a shortest path [source, ..., target], or
+     * null if target is unreachable from source
+     */
+    public int[] shortestPathAStar(int source, int target, Heuristic heuristic) {
+        return search(source, target, heuristic);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source over the whole graph.
+     * @param source the id of the first vertex
+     * @return the distance in miles from source to every vertex, infinite
+     * for vertices in other components
+     */
+    public double[] distancesFrom(int source) {
+        Workspace workspace = workspaces.get();
+        SearchState state = workspace.forward;
+        state.reset();
+        IndexedMinHeap heap = state.heap();
+        double[] distances = new double[graph.size()];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+        state.update(source, 0.0, -1);
+        heap.pushOrDecrease(source, 0.0);
+        while (!heap.isEmpty()) {
+            int curr = heap.pop();
+            state.settle();
+            double base = state.distance(curr);
+            distances[curr] = base;
+            state.relax(graph.endArc(curr) - graph.firstArc(curr));
+            for (int a = graph.firstArc(curr); a < graph.endArc(curr); a++) {
+                int neighbor = graph.target(a);
+                double candidate = base + graph.weight(a);
+                if (candidate < state.distance(neighbor)) {
+                    state.update(neighbor, candidate, curr);
+                    heap.pushOrDecrease(neighbor, candidate);
+                }
+            }
+        }
+        workspace.last = workspace.forwardOnly;
+        return distances;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source, stopping once the closest
+     * unsettled vertex is farther than radius.
+     * @param source the id of the root vertex
+     * @param radius the cutoff in miles, or Double.POSITIVE_INFINITY to
+     * search the whole component of source
+     * @return the shortest path tree of the vertices within radius
+     */
+    public ShortestPathTree shortestPathTree(int source, double radius) {
+        Workspace workspace = workspaces.get();
+        SearchState state = workspace.forward;
+        state.reset();
+        IndexedMinHeap heap = state.heap();
+        int[] reached = new int[16];
+        int count = 0;
+
+        state.update(source, 0.0, -1);
+        heap.pushOrDecrease(source, 0.0);
+        while (!heap.isEmpty() && heap.minKey() <= radius) {
+            int curr = heap.pop();
+            state.settle();
+            double base = state.distance(curr);
+            if (count == reached.length) {
+                reached = Arrays.copyOf(reached, count * 2);
+            }
+            reached[count++] = curr;
+            state.relax(graph.endArc(curr) - graph.firstArc(curr));
+            for (int a = graph.firstArc(curr); a < graph.endArc(curr); a++) {
+                int neighbor = graph.target(a);
+                double candidate = base + graph.weight(a);
+                if (candidate < state.distance(neighbor)) {
+                    state.update(neighbor, candidate, curr);
+                    heap.pushOrDecrease(neighbor, candidate);
+                }
+            }
+        }
+        workspace.last = workspace.forwardOnly;
+
+        reached = Arrays.copyOf(reached, count);
+        int[] ids = reached.clone();
+        Arrays.sort(ids);
+        double[] distances = new double[count];
+        int[] previous = new int[count];
+        for (int i = 0; i < count; i++) {
+            distances[i] = state.distance(ids[i]);
+            previous[i] = state.previous(ids[i]);
+        }
+        return new ShortestPathTree(graph, source, radius, reached, ids, distances, previous);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source until every target is
+     * settled or the component of source is exhausted.
+     * @param source the id of the first vertex
+     * @param targets the ids of the vertices of interest
+     * @return the distance in miles from source to each target, infinite
+     * for targets in other components
+     */
+    public double[] distancesTo(int source, int[] targets) {
+        int[] sorted = targets.clone();
+        Arrays.sort(sorted);
+        int remaining = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                remaining++;
+            }
+        }
+
+        Workspace workspace = workspaces.get();
+        SearchState state = workspace.forward;
+        state.reset();
+        IndexedMinHeap heap = state.heap();
+        state.update(source, 0.0, -1);
+        heap.pushOrDecrease(source, 0.0);
+        while (remaining > 0 && !heap.isEmpty()) {
+            int curr = heap.pop();
+            state.settle();
+            if (Arrays.binarySearch(sorted, curr) >= 0) {
+                remaining--;
+            }
+            double base = state.distance(curr);
+            state.relax(graph.endArc(curr) - graph.firstArc(curr));
+            for (int a = graph.firstArc(curr); a < graph.endArc(curr); a++) {
+                int neighbor = graph.target(a);
+                double candidate = base + graph.weight(a);
+                if (candidate < state.distance(neighbor)) {
+                    state.update(neighbor, candidate, curr);
+                    heap.pushOrDecrease(neighbor, candidate);
+                }
+            }
+        }
+        workspace.last = workspace.forwardOnly;
+
+        double[] distances = new double[targets.length];
+        for (int j = 0; j < targets.length; j++) {
+            distances[j] = state.distance(targets[j]);
+        }
+        return distances;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source and from target at the same
+     * time, always advancing the search whose queue has the smaller
+     * minimum, and stops once the two minimums add up to at least the
+     * shortest connection found so far.
+     * @param source the id of the first vertex
+     * @param target the id of the last vertex
+     * @return the vertex ids of a shortest path [source, ..., target], or
+     * null if target is unreachable from source
+     */
+    public int[] shortestPathBidirectional(int source, int target) {
+        return bidirectionalSearch(source, target, false);
+    }
+
+    /**
+     * Bidirectional A* using the average of the Graph.lowerBound distances
+     * to target and from source as the potential, (h_t(v) - h_s(v)) / 2
+     * forward and its negation backward, which keeps the two searches
+     * consistent with each other so the same stopping rule applies. Both
+     * bounds are consistent, so their half difference is too, and the
+     * path is a shortest one.
+     * @param source the id of the first vertex
+     * @param target the id of the last vertex
+     * @return the vertex ids of a shortest path [source, ..., target], or
+     * null if target is unreachable from source
+     */
+    public int[] shortestPathBidirectionalAStar(int source, int target) {
+        return bidirectionalSearch(source, target, true);
+    }
+
+    /**
+     * @return the number of vertices settled by the last search on the
+     * calling thread, counting both directions of a bidirectional search
+     */
+    public int lastSettledCount() {
+        int settled = 0;
+        for (SearchState state : workspaces.get().last) {
+            settled += state.settledCount();
+        }
+        return settled;
+    }
+
+    /**
+     * @return the search states used by the last search on the calling
+     * thread, two for a bidirectional search, whose counters describe
+     * that search until the thread starts another one
+     */
+    SearchState[] lastStates() {
+        return workspaces.get().last;
+    }
+
+    private int[] search(int source, int target, Heuristic heuristic) {
+        Workspace workspace = workspaces.get();
+        SearchState state = workspace.forward;
+        state.reset();
+        IndexedMinHeap heap = state.heap();
+
+        int[] path = null;
+        state.update(source, 0.0, -1);
+        heap.pushOrDecrease(source, heuristic == null ? 0.0 : heuristic.estimate(source));
+        while (!heap.isEmpty()) {
+            int curr = heap.pop();
+            state.settle();
+            if (curr == target) {
+                path = state.path(target);
+                break;
+            }
+            double base = state.distance(curr);
+            state.relax(graph.endArc(curr) - graph.firstArc(curr));
+            for (int a = graph.firstArc(curr); a < graph.endArc(curr); a++) {
+                int neighbor = graph.target(a);
+                double candidate = base + graph.weight(a);
+                if (candidate < state.distance(neighbor)) {
+                    state.update(neighbor, candidate, curr);
+                    double estimate = heuristic == null ? 0.0 : heuristic.estimate(neighbor);
+                    heap.pushOrDecrease(neighbor, candidate + estimate);
+                }
+            }
+        }
+        workspace.last = workspace.forwardOnly;
+        return path;
+    }
+
+    private int[] bidirectionalSearch(int source, int target, boolean guided) {
+        Workspace workspace = workspaces.get();
+        SearchState forward = workspace.forward;
+        SearchState backward = workspace.backward();
+        forward.reset();
+        backward.reset();
+
+        forward.update(source, 0.0, -1);
+        forward.heap().pushOrDecrease(source, guided ? potential(source, source, target) : 0.0);
+        backward.update(target, 0.0, -1);
+        backward.heap().pushOrDecrease(target, guided ? -potential(target, source, target) : 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (!forward.heap().isEmpty() && !backward.heap().isEmpty()) {
+            double forwardMin = forward.heap().minKey();
+            double backwardMin = backward.heap().minKey();
+            if (forwardMin + backwardMin >= best) {
+                break;
+            }
+            boolean isForward = forwardMin <= backwardMin;
+            SearchState state = isForward ? forward : backward;
+            SearchState other = isForward ? backward : forward;
+            double sign = isForward ? 1.0 : -1.0;
+
+            int curr = state.heap().pop();
+            state.settle();
+            double base = state.distance(curr);
+            state.relax(graph.endArc(curr) - graph.firstArc(curr));
+            for (int a = graph.firstArc(curr); a < graph.endArc(curr); a++) {
+                int neighbor = graph.target(a);
+                double candidate = base + graph.weight(a);
+                if (candidate < state.distance(neighbor)) {
+                    state.update(neighbor, candidate, curr);
+                    double estimate = guided ? sign * potential(neighbor, source, target) : 0.0;
+                    state.heap().pushOrDecrease(neighbor, candidate + estimate);
+                    if (other.reached(neighbor) && candidate + other.distance(neighbor) < best) {
+                        best = candidate + other.distance(neighbor);
+                        meet = neighbor;
+                    }
+                }
+            }
+        }
+        workspace.last = workspace.both;
+        if (meet < 0) {
+            return null;
+        }
+
+        int[] head = forward.path(meet);
+        int[] tail = backward.path(meet);
+        int[] path = new int[head.length + tail.length - 1];
+        System.arraycopy(head, 0, path, 0, head.length);
+        for (int i = 1; i < tail.length; i++) {
+            path[head.length + i - 1] = tail[tail.length - 1 - i];
+        }
+        return path;
+    }
+
+    /**
+     * The forward potential of v for bidirectional A*.
+     */
+    private double potential(int v, int source, int target) {
+        return (graph.lowerBound(v, target) - graph.lowerBound(v, source)) / 2;
+    }
+
+    /**
+     * A lower bound on the road distance from a vertex to the target of
+     * one A* search.
+     */
+    public interface Heuristic {
+        double estimate(int v);
+    }
+
+    /**
+     * Per-thread search scratch space. The backward state is only
+     * allocated once a thread runs a bidirectional search.
+     */
+    private static class Workspace {
+        final SearchState forward;
+        final SearchState[] forwardOnly;
+        private SearchState backward;
+        SearchState[] both;
+        SearchState[] last = new SearchState[0];
+
+        Workspace(int capacity) {
+            forward = new SearchState(capacity);
+            forwardOnly = new SearchState[] {forward};
+        }
+
+        SearchState backward() {
+            if (backward == null) {
+                backward = new SearchState(forward.capacity());
+                both = new SearchState[] {forward, backward};
+            }
+            return backward;
+        }
+    }
+}
@@ -30,13 +30,36 @@ public class Point implements Comparable<Point> {
      * @return The miles (on a straight line) between this and p.
      */
     public double distance(Point p) {
-        double deltaLon = Math.toRadians(lon - p.lon);
-        double deltaLat = Math.toRadians(lat - p.lat);
-        double deltaX = EARTH_RADIUS * Math.cos(Math.toRadians((lat + p.lat)/2)) * deltaLon;
+        return distance(lat, lon, p.lat, p.lon);
+    }
+
+    /**
+     * Calculates the straight line distance in miles between two raw
+     * latitude-longitude coordinates. Gives exactly the same result as
+     * distance(Point) so that callers storing coordinates in primitive
+     * arrays agree with callers holding Point objects.
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double deltaLon = Math.toRadians(lon1 - lon2);
+        double deltaLat = Math.toRadians(lat1 - lat2);
+        double deltaX = EARTH_RADIUS * Math.cos(Math.toRadians((lat1 + lat2)/2)) * deltaLon;
         double deltaY = EARTH_RADIUS * deltaLat;
         return Math.sqrt(Math.pow(deltaX, 2) + Math.pow(deltaY, 2));
     }
 
+    /**
+     * Like distance, but scales the east-west component by cosLat rather
+     * than by the cosine of the mean latitude of the two points. That
+     * makes it Euclidean distance after a fixed projection, so unlike
+     * distance it obeys the triangle inequality, and when cosLat is at
+     * most the cosine of the mean latitude it never exceeds distance.
+     */
+    public static double scaledDistance(double lat1, double lon1, double lat2, double lon2, double cosLat) {
+        double deltaX = EARTH_RADIUS * cosLat * Math.toRadians(lon1 - lon2);
+        double deltaY = EARTH_RADIUS * Math.toRadians(lat1 - lat2);
+        return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Point)) { 
@@ -51,7 +74,22 @@ public class Point implements Comparable<Point> {
 
     @Override
     public int hashCode() {
-        return Double.hashCode(lat+lon);
+        return hash(lat, lon);
+    }
+
+    /**
+     * Mixes the bits of both coordinates, so unlike hashing lat + lon,
+     * points on the same diagonal do not collide. Adding 0.0 turns -0.0
+     * into 0.0, which equals treats as the same coordinate. Snapshots
+     * store tables laid out by this hash, so changing it means bumping
+     * GraphSnapshot.VERSION.
+     */
+    static int hash(double lat, double lon) {
+        long h = Double.doubleToLongBits(lat + 0.0) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(lon + 0.0);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
     }
 
     @Override
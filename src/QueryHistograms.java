@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A QueryListener that aggregates every metric of every query kind into
+ * a histogram with power-of-two buckets: bucket 0 counts zeros and
+ * bucket b counts values in [2^(b-1), 2^b). Recording is a handful of
+ * atomic increments, so one instance can be shared by all query threads,
+ * and percentiles are accurate to within a factor of two, which is
+ * enough to tell a search that settled a thousand vertices from one
+ * that settled a million.
+ */
+public class QueryHistograms implements QueryListener {
+    private static final int BUCKETS = 64;
+    private static final QueryStats.Kind[] KINDS = QueryStats.Kind.values();
+    private static final QueryStats.Metric[] METRICS = QueryStats.Metric.values();
+
+    private final LongAdder[] counts = new LongAdder[KINDS.length];
+    private final LongAdder[][] sums = new LongAdder[KINDS.length][METRICS.length];
+    private final AtomicLongArray[][] buckets = new AtomicLongArray[KINDS.length][METRICS.length];
+
+    public QueryHistograms() {
+        for (int k = 0; k < KINDS.length; k++) {
+            counts[k] = new LongAdder();
+            for (int m = 0; m < METRICS.length; m++) {
+                sums[k][m] = new LongAdder();
+                buckets[k][m] = new AtomicLongArray(BUCKETS);
+            }
+        }
+    }
+
+    @Override
+    public void queryFinished(QueryStats stats) {
+        int k = stats.getKind().ordinal();
+        counts[k].increment();
+        for (int m = 0; m < METRICS.length; m++) {
+            long value = Math.max(0, METRICS[m].of(stats));
+            sums[k][m].add(value);
+            buckets[k][m].incrementAndGet(bucket(value));
+        }
+    }
+
+    /**
+     * @return the number of queries of this kind recorded
+     */
+    public long count(QueryStats.Kind kind) {
+        return counts[kind.ordinal()].sum();
+    }
+
+    /**
+     * @return the mean value of metric over the queries of this kind, 0
+     * if there were none
+     */
+    public double mean(QueryStats.Kind kind, QueryStats.Metric metric) {
+        long count = count(kind);
+        return count == 0 ? 0 : (double) sums[kind.ordinal()][metric.ordinal()].sum() / count;
+    }
+
+    /**
+     * @return the number of queries of this kind in each bucket of metric
+     */
+    public long[] histogram(QueryStats.Kind kind, QueryStats.Metric metric) {
+        AtomicLongArray counts = buckets[kind.ordinal()][metric.ordinal()];
+        long[] histogram = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            histogram[b] = counts.get(b);
+        }
+        return histogram;
+    }
+
+    /**
+     * @param p a quantile in [0, 1], such as 0.99
+     * @return the upper end of the bucket holding the pth quantile of
+     * metric over the queries of this kind, so at least a p share of the
+     * queries had at most this value; 0 if there were none
+     */
+    public long percentile(QueryStats.Kind kind, QueryStats.Metric metric, double p) {
+        long[] histogram = histogram(kind, metric);
+        long total = 0;
+        for (long c : histogram) {
+            total += c;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram[b];
+            if (seen >= rank && histogram[b] > 0) {
+                return upperBound(b);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets every recorded query. Queries recorded while this runs may
+     * be partly kept.
+     */
+    public void reset() {
+        for (int k = 0; k < KINDS.length; k++) {
+            counts[k].reset();
+            for (int m = 0; m < METRICS.length; m++) {
+                sums[k][m].reset();
+                for (int b = 0; b < BUCKETS; b++) {
+                    buckets[k][m].set(b, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a table of the count, mean, median, 90th and 99th
+     * percentile of each metric for each kind of query recorded
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-14s %-14s %10s %12s %12s %12s %12s%n",
+                "query", "metric", "count", "mean", "p50", "p90", "p99"));
+        for (QueryStats.Kind kind : KINDS) {
+            long count = count(kind);
+            if (count == 0) {
+                continue;
+            }
+            for (QueryStats.Metric metric : METRICS) {
+                out.append(String.format("%-14s %-14s %10d %12.1f %12d %12d %12d%n", kind, metric, count,
+                        mean(kind, metric), percentile(kind, metric, 0.5), percentile(kind, metric, 0.9),
+                        percentile(kind, metric, 0.99)));
+            }
+        }
+        return out.toString();
+    }
+
+    static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * Receives the statistics of each route, connected and nearestPoint
+ * query made through a GraphProcessor; see
+ * GraphProcessor.setQueryListener. It is called on the thread that made
+ * the query, once the result is ready and before it is returned, so it
+ * must be thread-safe and should be quick.
+ */
+public interface QueryListener {
+    void queryFinished(QueryStats stats);
+}
@@ -0,0 +1,178 @@
+/**
+ * What one GraphProcessor query did and where its time went, reported
+ * to a QueryListener. Counts are summed over both directions of a
+ * bidirectional search and are zero for queries that do not search the
+ * graph: connected, nearestPoint, routes answered from the route cache
+ * and routes between unconnected points.
+ *
+ * Times are split into three phases. For route, snap finds the vertex
+ * ids of start and end and checks they are connected, search finds the
+ * path's vertex ids, and path turns them into Points. For connected,
+ * snap finds the vertex ids and search compares their components. For
+ * nearestPoint, search walks the k-d tree and path builds the Point.
+ */
+public class QueryStats {
+    /** The GraphProcessor method a query was made through */
+    public enum Kind {
+        ROUTE,
+        CONNECTED,
+        NEAREST_POINT
+    }
+
+    /** The values a QueryStats records, as aggregated by QueryHistograms */
+    public enum Metric {
+        SETTLED,
+        RELAXED,
+        PUSHES,
+        DECREASES,
+        POPS,
+        MAX_HEAP_SIZE,
+        SNAP_NANOS,
+        SEARCH_NANOS,
+        PATH_NANOS;
+
+        /**
+         * @return this metric's value in stats
+         */
+        public long of(QueryStats stats) {
+            switch (this) {
+                case SETTLED:
+                    return stats.settled;
+                case RELAXED:
+                    return stats.relaxed;
+                case PUSHES:
+                    return stats.pushes;
+                case DECREASES:
+                    return stats.decreases;
+                case POPS:
+                    return stats.pops;
+                case MAX_HEAP_SIZE:
+                    return stats.maxHeapSize;
+                case SNAP_NANOS:
+                    return stats.snapNanos;
+                case SEARCH_NANOS:
+                    return stats.searchNanos;
+                case PATH_NANOS:
+                    return stats.pathNanos;
+                default:
+                    throw new IllegalArgumentException("Unknown metric " + this);
+            }
+        }
+    }
+
+    private static final SearchState[] NO_SEARCH = new SearchState[0];
+
+    private final Kind kind;
+    private final int settled;
+    private final int relaxed;
+    private final int pushes;
+    private final int decreases;
+    private final int pops;
+    private final int maxHeapSize;
+    private final long snapNanos;
+    private final long searchNanos;
+    private final long pathNanos;
+
+    /**
+     * Reads the counters of the given search states, which must not be
+     * reused until this returns.
+     * @param states the states of the search, empty if there was none
+     */
+    QueryStats(Kind kind, SearchState[] states, long snapNanos, long searchNanos, long pathNanos) {
+        int settled = 0;
+        int relaxed = 0;
+        int pushes = 0;
+        int decreases = 0;
+        int pops = 0;
+        int maxHeapSize = 0;
+        for (SearchState state : states) {
+            IndexedMinHeap heap = state.heap();
+            settled += state.settledCount();
+            relaxed += state.relaxedCount();
+            pushes += heap.pushCount();
+            decreases += heap.decreaseCount();
+            pops += heap.popCount();
+            maxHeapSize += heap.maxSize();
+        }
+        this.kind = kind;
+        this.settled = settled;
+        this.relaxed = relaxed;
+        this.pushes = pushes;
+        this.decreases = decreases;
+        this.pops = pops;
+        this.maxHeapSize = maxHeapSize;
+        this.snapNanos = snapNanos;
+        this.searchNanos = searchNanos;
+        this.pathNanos = pathNanos;
+    }
+
+    QueryStats(Kind kind, long snapNanos, long searchNanos, long pathNanos) {
+        this(kind, NO_SEARCH, snapNanos, searchNanos, pathNanos);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the number of vertices removed from the queue
+     */
+    public int getSettled() {
+        return settled;
+    }
+
+    /**
+     * @return the number of arcs checked for a shorter distance
+     */
+    public int getRelaxed() {
+        return relaxed;
+    }
+
+    /**
+     * @return the number of vertices inserted into the queue
+     */
+    public int getPushes() {
+        return pushes;
+    }
+
+    /**
+     * @return the number of queue keys lowered in place
+     */
+    public int getDecreases() {
+        return decreases;
+    }
+
+    /**
+     * @return the number of vertices popped from the queue
+     */
+    public int getPops() {
+        return pops;
+    }
+
+    /**
+     * @return the largest the queue grew, summed over both queues of a
+     * bidirectional search
+     */
+    public int getMaxHeapSize() {
+        return maxHeapSize;
+    }
+
+    public long getSnapNanos() {
+        return snapNanos;
+    }
+
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    public long getPathNanos() {
+        return pathNanos;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " settled=" + settled + " relaxed=" + relaxed + " pushes=" + pushes
+                + " decreases=" + decreases + " pops=" + pops + " maxHeap=" + maxHeapSize
+                + " snap=" + snapNanos + "ns search=" + searchNanos + "ns path=" + pathNanos + "ns";
+    }
+}
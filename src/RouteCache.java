@@ -0,0 +1,175 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded least-recently-used cache of shortest paths, keyed by the
+ * unordered pair of end vertex ids. Roads are undirected, so the path
+ * from t to s is the path from s to t reversed and both directions share
+ * one entry.
+ *
+ * The cache is split into segments by key, each a LinkedHashMap in
+ * access order under its own lock, so threads looking up different
+ * pairs rarely wait for each other. Each segment evicts its least
+ * recently used entries once it holds more than its share of either
+ * limit; bytes are estimated from the path lengths.
+ */
+public class RouteCache {
+    // Rough size of a map entry, its key and the array header
+    private static final int ENTRY_BYTES = 96;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_ENTRIES = 256;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries the most paths to keep, at least 1
+     * @param maxBytes the most bytes to spend on paths, estimated
+     */
+    public RouteCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxEntries / MIN_SEGMENT_ENTRIES)));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / count), Math.max(1, maxBytes / count));
+        }
+    }
+
+    /**
+     * @return the vertex ids of the cached path [source, ..., target], or
+     * null if the pair is not cached
+     */
+    public int[] get(int source, int target) {
+        long key = key(source, target);
+        int[] path = segment(key).get(key);
+        if (path == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return orient(path, source);
+    }
+
+    /**
+     * Caches path as the route between its two ends.
+     * @param path the vertex ids of a shortest path, at least two long
+     */
+    public void put(int[] path) {
+        int source = path[0];
+        int target = path[path.length - 1];
+        long key = key(source, target);
+        int[] stored = orient(path, Math.min(source, target));
+        evictions.add(segment(key).put(key, stored));
+    }
+
+    /**
+     * @return the number of lookups that found a path
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that found nothing
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of paths dropped to stay within the limits
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of cached paths
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated bytes held by cached paths
+     */
+    public long bytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    private static long key(int u, int v) {
+        return (long) Math.min(u, v) << 32 | (Math.max(u, v) & 0xffffffffL);
+    }
+
+    private Segment segment(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return segments[(int) (h >>> 40) & (segments.length - 1)];
+    }
+
+    /**
+     * @return a copy of path that starts at first
+     */
+    private static int[] orient(int[] path, int first) {
+        if (path[0] == first) {
+            return path.clone();
+        }
+        int[] reversed = new int[path.length];
+        for (int i = 0; i < path.length; i++) {
+            reversed[i] = path[path.length - 1 - i];
+        }
+        return reversed;
+    }
+
+    private static long weight(int[] path) {
+        return ENTRY_BYTES + 4L * path.length;
+    }
+
+    private static class Segment {
+        final LinkedHashMap<Long, int[]> map = new LinkedHashMap<>(16, 0.75f, true);
+        final int maxEntries;
+        final long maxBytes;
+        long bytes;
+
+        Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized int[] get(long key) {
+            return map.get(key);
+        }
+
+        /**
+         * @return the number of entries evicted to make room
+         */
+        synchronized int put(long key, int[] path) {
+            int[] old = map.put(key, path);
+            bytes += weight(path) - (old == null ? 0 : weight(old));
+            int evicted = 0;
+            while (map.size() > 1 && (map.size() > maxEntries || bytes > maxBytes)) {
+                Map.Entry<Long, int[]> eldest = map.entrySet().iterator().next();
+                bytes -= weight(eldest.getValue());
+                map.remove(eldest.getKey());
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * The search algorithms GraphProcessor.route can use. Every mode
+ * returns a shortest path; they differ in how much of the graph they
+ * explore to find it.
+ */
+public enum RouteMode {
+    /** Dijkstra's algorithm from the start, stopping when the end is settled */
+    DIJKSTRA,
+    /** A* ordered by distance so far plus a straight-line lower bound to the end */
+    ASTAR,
+    /** Dijkstra's algorithm from both ends, meeting in the middle */
+    BIDIRECTIONAL,
+    /** A* from both ends using averaged straight-line lower bounds */
+    BIDIRECTIONAL_ASTAR,
+    /**
+     * Bidirectional upward search in a contraction hierarchy, which must
+     * first be built or loaded with GraphProcessor
+     */
+    CONTRACTION_HIERARCHY,
+    /**
+     * A* bounded by landmark distances and the triangle inequality; the
+     * landmarks must first be computed or loaded with GraphProcessor
+     */
+    ALT
+}
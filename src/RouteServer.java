@@ -0,0 +1,434 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Serves a GraphProcessor over HTTP with the JDK's built-in server.
+ * Every endpoint answers GET with JSON; points are given as lat,lon and
+ * snapped to the nearest vertex of the graph.
+ *
+ *   /nearest?p=lat,lon[&amp;k=count]     nearest vertex, or the k nearest,
+ *                                 at most MAX_K
+ *   /connected?from=lat,lon&amp;to=lat,lon
+ *   /route?from=lat,lon&amp;to=lat,lon[&amp;mode=ALT]
+ *   /distance?from=lat,lon&amp;to=lat,lon
+ *   POST /batch                   one "lat,lon lat,lon" pair per line,
+ *                                 answered with an array of distances
+ *
+ * Requests run on virtual threads when the JVM has them (Java 21 and
+ * later) and on a fixed pool of twice the processor count otherwise.
+ * Those threads only parse requests and write responses. The graph
+ * searches are handed to a fixed pool of one platform thread per
+ * processor, and the request thread waits for the answer. PathFinder
+ * and ContractionHierarchy keep their graph-sized scratch space per
+ * thread, so with a new virtual thread per request every search would
+ * allocate and clear that space again. On the search pool it is
+ * allocated once per core and reused. At most maxInFlight requests are
+ * admitted at a time, counting those waiting for a thread; the rest are
+ * turned away at once with 503 and a Retry-After header rather than
+ * queueing without bound, so latency stays flat under overload and
+ * clients can back off.
+ *
+ * A contraction hierarchy, landmarks and hub labels written by their
+ * own main methods can be loaded at startup; without them the
+ * CONTRACTION_HIERARCHY and ALT route modes answer 409, and /distance
+ * and /batch search instead of merging labels.
+ *
+ * Usage: java RouteServer [--ch file] [--landmarks file] [--hub-labels file]
+ *            graph-file [port] [max-in-flight]
+ */
+public class RouteServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+    public static final int MAX_BATCH = 10000;
+    public static final int MAX_K = 1000;
+    private static final String USAGE = "Usage: java RouteServer [--ch file] [--landmarks file]"
+            + " [--hub-labels file] graph-file [port] [max-in-flight]";
+
+    private final GraphProcessor processor;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ExecutorService searchers;
+    private final Semaphore admission;
+    private final ThreadLocal<Boolean> shedding = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Creates a server bound to port; call start to begin serving.
+     * @param processor an initialized GraphProcessor
+     * @param port the TCP port, or 0 for any free port
+     * @param maxInFlight the most requests admitted at once
+     * @throws IOException if the port cannot be bound
+     */
+    public RouteServer(GraphProcessor processor, int port, int maxInFlight) throws IOException {
+        this.processor = processor;
+        this.server = HttpServer.create(new InetSocketAddress(port), maxInFlight);
+        this.workers = newWorkers();
+        this.searchers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.admission = new Semaphore(maxInFlight);
+        server.setExecutor(task -> {
+            if (admission.tryAcquire()) {
+                workers.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        admission.release();
+                    }
+                });
+            } else {
+                // Runs on the dispatcher thread, where the handler only
+                // writes a short 503
+                shedding.set(true);
+                try {
+                    task.run();
+                } finally {
+                    shedding.set(false);
+                }
+            }
+        });
+        server.createContext("/nearest", guarded(this::nearest));
+        server.createContext("/connected", guarded(this::connected));
+        server.createContext("/route", guarded(this::route));
+        server.createContext("/distance", guarded(this::distance));
+        server.createContext("/batch", guarded(this::batch));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.isEmpty() || positional.size() > 3 || !List.of("--ch", "--landmarks", "--hub-labels")
+                .containsAll(options.keySet())) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        GraphProcessor processor = new GraphProcessor();
+        try (FileInputStream in = new FileInputStream(positional.get(0))) {
+            processor.initialize(in);
+        }
+        if (options.containsKey("--ch")) {
+            try (FileInputStream in = new FileInputStream(options.get("--ch"))) {
+                processor.loadContractionHierarchy(in);
+            }
+        }
+        if (options.containsKey("--landmarks")) {
+            try (FileInputStream in = new FileInputStream(options.get("--landmarks"))) {
+                processor.loadLandmarks(in);
+            }
+        }
+        if (options.containsKey("--hub-labels")) {
+            try (FileInputStream in = new FileInputStream(options.get("--hub-labels"))) {
+                processor.loadHubLabels(in);
+            }
+        }
+        int port = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : DEFAULT_PORT;
+        int maxInFlight = positional.size() > 2 ? Integer.parseInt(positional.get(2)) : DEFAULT_MAX_IN_FLIGHT;
+        RouteServer server = new RouteServer(processor, port, maxInFlight);
+        server.start();
+        System.out.println("Serving " + positional.get(0) + " on port " + server.port());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to delaySeconds for those in
+     * progress, then releases the worker and search threads.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdown();
+        searchers.shutdown();
+    }
+
+    /**
+     * @return the port the server is bound to
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Virtual threads are looked up reflectively so the server still
+     * compiles and runs on Java 17.
+     */
+    private static ExecutorService newWorkers() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    /**
+     * Runs query on the search pool and waits for its result, rethrowing
+     * whatever it throws.
+     */
+    private <T> T search(Callable<T> query) throws Exception {
+        Future<T> future = searchers.submit(query);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * Handles one request and returns its JSON body. Throws
+     * IllegalArgumentException for malformed parameters and
+     * InvalidAlgorithmParameterException when there is no route.
+     */
+    private interface Endpoint {
+        String handle(HttpExchange exchange, Map<String, String> params) throws Exception;
+    }
+
+    /**
+     * Wraps an endpoint with load shedding and error responses. The
+     * status is settled before anything is sent, so a response that
+     * fails partway through is never followed by a second one.
+     */
+    private HttpHandler guarded(Endpoint endpoint) {
+        return exchange -> {
+            int status = 200;
+            String body;
+            if (shedding.get()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                status = 503;
+                body = error("Server is overloaded");
+            } else {
+                try {
+                    body = endpoint.handle(exchange, query(exchange));
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    body = error(e.getMessage());
+                } catch (InvalidAlgorithmParameterException e) {
+                    status = 404;
+                    body = error(e.getMessage());
+                } catch (IllegalStateException e) {
+                    status = 409;
+                    body = error(e.getMessage());
+                } catch (Exception e) {
+                    status = 500;
+                    body = error(String.valueOf(e));
+                }
+            }
+            try {
+                send(exchange, status, body);
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    /**
+     * Snapping keeps no per-thread state, so unlike the searches it runs
+     * on the request thread.
+     */
+    private String nearest(HttpExchange exchange, Map<String, String> params) {
+        Point p = point(params, "p");
+        if (!params.containsKey("k")) {
+            return json(processor.nearestPoint(p));
+        }
+        int k = integer(params, "k");
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_K);
+        }
+        return json(processor.nearestPoints(p, k));
+    }
+
+    private String connected(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Point from = processor.nearestPoint(point(params, "from"));
+        Point to = processor.nearestPoint(point(params, "to"));
+        return "{\"connected\":" + search(() -> processor.connected(from, to)) + "}";
+    }
+
+    private String route(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Point from = processor.nearestPoint(point(params, "from"));
+        Point to = processor.nearestPoint(point(params, "to"));
+        RouteMode mode = processor.getRouteMode();
+        if (params.containsKey("mode")) {
+            try {
+                mode = RouteMode.valueOf(params.get("mode").toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown mode " + params.get("mode"));
+            }
+        }
+        RouteMode chosen = mode;
+        List<Point> route = search(() -> processor.route(from, to, chosen));
+        return "{\"distance\":" + number(processor.routeDistance(route)) + ",\"points\":" + json(route) + "}";
+    }
+
+    private String distance(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Point from = processor.nearestPoint(point(params, "from"));
+        Point to = processor.nearestPoint(point(params, "to"));
+        return "{\"distance\":" + number(search(() -> processor.distance(from, to))) + "}";
+    }
+
+    /**
+     * Answers many distance queries under a single admission, which is
+     * far cheaper for clients with many pairs than one request each.
+     * Pairs without a route get null.
+     */
+    private String batch(HttpExchange exchange, Map<String, String> params) throws Exception {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            throw new IllegalArgumentException("POST one \"lat,lon lat,lon\" pair per line");
+        }
+        List<Point[]> pairs = new ArrayList<>();
+        BufferedReader body = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        for (String line = body.readLine(); line != null; line = body.readLine()) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (pairs.size() == MAX_BATCH) {
+                throw new IllegalArgumentException("At most " + MAX_BATCH + " pairs per batch");
+            }
+            String[] ends = line.split("\\s+");
+            if (ends.length != 2) {
+                throw new IllegalArgumentException("Expected \"lat,lon lat,lon\" but got " + line);
+            }
+            pairs.add(new Point[] {processor.nearestPoint(parsePoint(ends[0])),
+                    processor.nearestPoint(parsePoint(ends[1]))});
+        }
+
+        return search(() -> {
+            StringBuilder out = new StringBuilder("[");
+            for (int i = 0; i < pairs.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                try {
+                    out.append(number(processor.distance(pairs.get(i)[0], pairs.get(i)[1])));
+                } catch (InvalidAlgorithmParameterException e) {
+                    out.append("null");
+                }
+            }
+            return out.append(']').toString();
+        });
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static Point point(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return parsePoint(value);
+    }
+
+    private static Point parsePoint(String value) {
+        String[] parts = value.split(",");
+        try {
+            if (parts.length == 2) {
+                return new Point(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Expected lat,lon but got " + value);
+    }
+
+    private static int integer(Map<String, String> params, String name) {
+        try {
+            return Integer.parseInt(params.get(name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected an integer " + name);
+        }
+    }
+
+    private static String json(Point p) {
+        return p == null ? "null" : "[" + p.getLat() + "," + p.getLon() + "]";
+    }
+
+    private static String json(List<Point> points) {
+        StringBuilder out = new StringBuilder("[");
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(json(points.get(i)));
+        }
+        return out.append(']').toString();
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    private static String error(String message) {
+        String text = String.valueOf(message);
+        StringBuilder out = new StringBuilder("{\"error\":\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append("\"}").toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
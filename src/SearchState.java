@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for one shortest path search over a graph of a
+ * fixed size: tentative distances, predecessors and a priority queue.
+ * Entries are tagged with the generation of the search that wrote them,
+ * so starting a new search is O(1) rather than O(V) and a query does no
+ * allocation proportional to the graph. A SearchState must only be used
+ * by one thread at a time.
+ */
+public class SearchState {
+    private final double[] distance;
+    private final int[] previous;
+    private final int[] stamp;
+    private final IndexedMinHeap heap;
+    private int generation;
+    private int settled;
+    private int relaxed;
+
+    /**
+     * @param capacity the number of vertices in the graph to be searched
+     */
+    public SearchState(int capacity) {
+        distance = new double[capacity];
+        previous = new int[capacity];
+        stamp = new int[capacity];
+        heap = new IndexedMinHeap(capacity);
+        generation = 1;
+    }
+
+    /**
+     * @return the number of vertices this state can search
+     */
+    public int capacity() {
+        return stamp.length;
+    }
+
+    /**
+     * Forgets everything recorded by the previous search.
+     */
+    public void reset() {
+        heap.clear();
+        settled = 0;
+        relaxed = 0;
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    public IndexedMinHeap heap() {
+        return heap;
+    }
+
+    /**
+     * @return true if v has been given a tentative distance in this search
+     */
+    public boolean reached(int v) {
+        return stamp[v] == generation;
+    }
+
+    /**
+     * @return the tentative distance of v, or infinity if v is unreached
+     */
+    public double distance(int v) {
+        return stamp[v] == generation ? distance[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the predecessor of v on its tentative path, or -1 for the
+     * source; only meaningful if v is reached
+     */
+    public int previous(int v) {
+        return previous[v];
+    }
+
+    /**
+     * Records a tentative distance and predecessor for v.
+     */
+    public void update(int v, double d, int prev) {
+        stamp[v] = generation;
+        distance[v] = d;
+        previous[v] = prev;
+    }
+
+    /**
+     * Counts one more vertex removed from the queue with its final distance.
+     */
+    public void settle() {
+        settled++;
+    }
+
+    /**
+     * @return the number of vertices settled by the current search
+     */
+    public int settledCount() {
+        return settled;
+    }
+
+    /**
+     * Counts arcs about to be relaxed, that is, checked for a shorter
+     * tentative distance to their target.
+     */
+    public void relax(int arcs) {
+        relaxed += arcs;
+    }
+
+    /**
+     * @return the number of arcs relaxed by the current search
+     */
+    public int relaxedCount() {
+        return relaxed;
+    }
+
+    /**
+     * Follows predecessors back from target.
+     * @return the vertex ids of the path ending at target, first to last
+     */
+    public int[] path(int target) {
+        int length = 0;
+        for (int v = target; v >= 0; v = previous[v]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = target; v >= 0; v = previous[v]) {
+            path[--length] = v;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * The result of a single-source search: the road distance from the
+ * source to every vertex within some radius, and each such vertex's
+ * predecessor on a shortest path from the source, which together form
+ * a shortest path tree. Vertices farther than the radius, or in other
+ * components, are unreached.
+ *
+ * Only the reached vertices are stored, sorted by id with their
+ * distances and predecessors alongside, so a small radius costs memory
+ * in proportion to what it reaches rather than to the graph, and a
+ * lookup is a binary search.
+ */
+public class ShortestPathTree {
+    private final Graph graph;
+    private final int source;
+    private final double radius;
+    private final int[] reached;
+    private final int[] ids;
+    private final double[] distance;
+    private final int[] previous;
+
+    /**
+     * @param reached the reached vertices in order of distance
+     * @param ids the reached vertices in increasing order
+     * @param distance the distance of ids[i] from the source
+     * @param previous the predecessor of ids[i], or -1 for the source
+     */
+    ShortestPathTree(Graph graph, int source, double radius, int[] reached, int[] ids, double[] distance,
+            int[] previous) {
+        this.graph = graph;
+        this.source = source;
+        this.radius = radius;
+        this.reached = reached;
+        this.ids = ids;
+        this.distance = distance;
+        this.previous = previous;
+    }
+
+    /**
+     * @return the id of the vertex the tree is rooted at
+     */
+    public int source() {
+        return source;
+    }
+
+    /**
+     * @return the largest distance in miles the search went
+     */
+    public double radius() {
+        return radius;
+    }
+
+    /**
+     * @return the number of reached vertices, including the source
+     */
+    public int size() {
+        return reached.length;
+    }
+
+    /**
+     * @return true if v is within the radius of the source
+     */
+    public boolean reached(int v) {
+        return Arrays.binarySearch(ids, v) >= 0;
+    }
+
+    /**
+     * @return the road distance in miles from the source to v, or
+     * infinity if v was not reached
+     */
+    public double distance(int v) {
+        int i = Arrays.binarySearch(ids, v);
+        return i < 0 ? Double.POSITIVE_INFINITY : distance[i];
+    }
+
+    /**
+     * @return the vertex before v on a shortest path from the source, or
+     * -1 if v is the source or was not reached
+     */
+    public int previous(int v) {
+        int i = Arrays.binarySearch(ids, v);
+        return i < 0 ? -1 : previous[i];
+    }
+
+    /**
+     * @return the ids of the reached vertices in order of distance
+     */
+    public int[] reachedVertices() {
+        return reached.clone();
+    }
+
+    /**
+     * @return the vertex ids of a shortest path [source, ..., v], or null
+     * if v was not reached
+     */
+    public int[] path(int v) {
+        if (!reached(v)) {
+            return null;
+        }
+        int length = 1;
+        for (int u = previous(v); u >= 0; u = previous(u)) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int u = v; u >= 0; u = previous(u)) {
+            path[--length] = u;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the boundary of the isochrone: the reached vertices with at
+     * least one neighbor that was not reached, so drawing them outlines
+     * the area within the radius.
+     * @return the ids of the boundary vertices in order of distance
+     */
+    public int[] boundary() {
+        int[] result = new int[reached.length];
+        int count = 0;
+        for (int v : reached) {
+            for (int a = graph.firstArc(v); a < graph.endArc(v); a++) {
+                if (!reached(graph.target(a))) {
+                    result[count++] = v;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
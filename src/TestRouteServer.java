@@ -0,0 +1,141 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.io.FileInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Testing RouteServer over HTTP on the simple graph
+ */
+
+public class TestRouteServer {
+	GraphProcessor simpleDriver = new GraphProcessor();
+	RouteServer server;
+	HttpClient client = HttpClient.newHttpClient();
+
+	@BeforeEach
+	public void setup() throws Exception {
+		simpleDriver.initialize(new FileInputStream("data/simple.graph"));
+		server = new RouteServer(simpleDriver, 0, 16);
+		server.start();
+	}
+
+	@AfterEach
+	public void teardown() {
+		server.stop(0);
+	}
+
+	/**
+	 * Tests that /nearest snaps to the closest vertex and bounds k
+	 */
+	@Test
+	public void testNearest() throws Exception {
+		assertResponse(200, "[2.0,-1.0]", get("/nearest?p=2.1,-0.9"));
+		assertResponse(200, "[[2.0,-1.0],[2.0,0.0]]", get("/nearest?p=2.1,-0.7&k=2"));
+		assertEquals(400, get("/nearest?p=2,-1&k=0").statusCode());
+		assertEquals(400, get("/nearest?p=2,-1&k=" + (RouteServer.MAX_K + 1)).statusCode());
+		assertEquals(400, get("/nearest?p=2,-1&k=many").statusCode());
+	}
+
+	/**
+	 * Tests that /route and /distance agree with GraphProcessor, and that
+	 * unconnected points get 404
+	 */
+	@Test
+	public void testRoute() throws Exception {
+		List<Point> route = simpleDriver.route(new Point(2, -1), new Point(1, 1));
+		double distance = simpleDriver.routeDistance(route);
+		HttpResponse<String> response = get("/route?from=2,-1&to=1,1");
+		assertEquals(200, response.statusCode());
+		assertTrue(response.body().startsWith("{\"distance\":" + distance + ",\"points\":[[2.0,-1.0],"));
+		assertResponse(200, "{\"distance\":" + distance + "}", get("/distance?from=2,-1&to=1,1"));
+		assertResponse(200, "{\"connected\":false}", get("/connected?from=2,-1&to=-1,1"));
+		assertEquals(404, get("/route?from=2,-1&to=-1,1").statusCode());
+	}
+
+	/**
+	 * Tests that modes needing preprocessing answer 409 until it is done
+	 */
+	@Test
+	public void testPreprocessedModes() throws Exception {
+		assertEquals(409, get("/route?from=2,-1&to=1,1&mode=ALT").statusCode());
+		assertEquals(409, get("/route?from=2,-1&to=1,1&mode=contraction_hierarchy").statusCode());
+		simpleDriver.buildLandmarks(2);
+		simpleDriver.buildContractionHierarchy();
+		assertEquals(200, get("/route?from=2,-1&to=1,1&mode=ALT").statusCode());
+		assertEquals(200, get("/route?from=2,-1&to=1,1&mode=contraction_hierarchy").statusCode());
+		assertEquals(400, get("/route?from=2,-1&to=1,1&mode=teleport").statusCode());
+	}
+
+	/**
+	 * Tests that malformed requests get 400 with a valid JSON string,
+	 * even when the message holds control characters
+	 */
+	@Test
+	public void testErrors() throws Exception {
+		assertResponse(400, "{\"error\":\"Missing parameter p\"}", get("/nearest"));
+		assertResponse(400, "{\"error\":\"Expected lat,lon but got \\u000a\\\"\"}", get("/nearest?p=%0A%22"));
+	}
+
+	/**
+	 * Tests that /batch answers one distance per line, null without a route
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		double distance = simpleDriver.distance(new Point(2, -1), new Point(1, 1));
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/batch"))
+				.POST(HttpRequest.BodyPublishers.ofString("2,-1 1,1\n\n2,-1 -1,1\n")).build(),
+			HttpResponse.BodyHandlers.ofString());
+		assertResponse(200, "[" + distance + ",null]", response);
+		assertEquals(400, get("/batch").statusCode());
+	}
+
+	/**
+	 * Tests that concurrent routes all search on the bounded pool of one
+	 * thread per processor, however many request threads there are
+	 */
+	@Test
+	public void testSearchThreads() throws Exception {
+		Set<Thread> searchThreads = ConcurrentHashMap.newKeySet();
+		simpleDriver.setQueryListener(stats -> {
+			if (stats.getKind() == QueryStats.Kind.ROUTE) {
+				searchThreads.add(Thread.currentThread());
+			}
+		});
+		List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+		for (int i = 0; i < 64; i++) {
+			responses.add(client.sendAsync(HttpRequest.newBuilder(uri("/route?from=2,-1&to=1,1")).build(),
+				HttpResponse.BodyHandlers.ofString()));
+		}
+		for (CompletableFuture<HttpResponse<String>> response : responses) {
+			int status = response.get().statusCode();
+			assertTrue(status == 200 || status == 503, "Unexpected status " + status);
+		}
+		assertFalse(searchThreads.isEmpty());
+		assertTrue(searchThreads.size() <= Runtime.getRuntime().availableProcessors(),
+			searchThreads.size() + " threads searched");
+	}
+
+	private HttpResponse<String> get(String path) throws Exception {
+		return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + server.port() + path);
+	}
+
+	private static void assertResponse(int status, String body, HttpResponse<String> response) {
+		assertEquals(status, response.statusCode(), response.body());
+		assertEquals(body, response.body());
+	}
+}
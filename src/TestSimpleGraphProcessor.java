@@ -2,16 +2,23 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.Assert;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.util.Arrays;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.security.InvalidAlgorithmParameterException;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.*;
 
 
@@ -68,6 +75,23 @@ public class TestSimpleGraphProcessor {
 		}
 	}
 
+	/**
+	 * Tests that driver returns the k closest points and the points within
+	 * a radius of a query point, closest first
+	 */
+	@Test
+	public void testNearestPoints() {
+		Point a = simpleCityLookup.get("A A");
+		assertEquals(Arrays.asList(new Point(2, -1), new Point(2, 0), new Point(1, -1)),
+			simpleDriver.nearestPoints(a, 3));
+		assertEquals(10, simpleDriver.nearestPoints(a, 100).size());
+		assertTrue(simpleDriver.nearestPoints(a, 0).isEmpty());
+
+		assertEquals(Arrays.asList(new Point(2, -1), new Point(2, 0), new Point(1, -1)),
+			simpleDriver.pointsWithin(a, 70));
+		assertEquals(Arrays.asList(new Point(2, -1)), simpleDriver.pointsWithin(a, 0));
+	}
+
     /**
      * Tests that driver returns a List<Point> corresponding to the shortest path from start to end
      * Accepts alternate paths that are ultimately within 3% of the distance of the true shortest path
@@ -93,6 +117,374 @@ public class TestSimpleGraphProcessor {
 	
 	}
 
+	/**
+	 * Tests that every route mode finds a path as short as Dijkstra's
+	 * @throws InvalidAlgorithmParameterException
+	 */
+	@Test
+	public void testRouteModes() throws InvalidAlgorithmParameterException {
+		simpleDriver.buildContractionHierarchy();
+		simpleDriver.buildLandmarks(2);
+		Point[][] pairs = new Point[][] {
+			{new Point(2, -1), new Point(1, 1)},
+			{new Point(2, 1), new Point(1, -1)},
+			{new Point(0, 0), new Point(-1, 0)}};
+		for (Point[] pair : pairs) {
+			double trueDist = simpleDriver.routeDistance(simpleDriver.route(pair[0], pair[1], RouteMode.DIJKSTRA));
+			for (RouteMode mode : RouteMode.values()) {
+				List<Point> res = simpleDriver.route(pair[0], pair[1], mode);
+				assertEquals(pair[0], res.get(0), mode + " route does not begin at start");
+				assertEquals(pair[1], res.get(res.size() - 1), mode + " route does not end at end");
+				assertEquals(trueDist, simpleDriver.routeDistance(res), 1e-9, mode + " route is not a shortest path");
+			}
+		}
+	}
+
+	/**
+	 * Tests the route modes on paths between (45, -120) and (45, -60) that
+	 * bow north or south by different amounts. The straight line distance
+	 * between the ends exceeds the length of the best path here, so modes
+	 * guided by it would return a longer one.
+	 */
+	@Test
+	public void testRouteModesOnArcs(@TempDir Path dir) throws Exception {
+		GraphProcessor arcDriver = new GraphProcessor();
+		arcDriver.initialize(new FileInputStream(writeArcGraph(dir).toFile()));
+		Point start = new Point(45, -120);
+		Point end = new Point(45, -60);
+		double trueDist = arcDriver.routeDistance(arcDriver.route(start, end, RouteMode.DIJKSTRA));
+		assertEquals(2866.035, trueDist, 1e-3);
+		for (RouteMode mode : new RouteMode[] {RouteMode.ASTAR, RouteMode.BIDIRECTIONAL,
+				RouteMode.BIDIRECTIONAL_ASTAR}) {
+			assertEquals(trueDist, arcDriver.routeDistance(arcDriver.route(start, end, mode)), 1e-9,
+				mode + " route is not a shortest path");
+		}
+		assertEquals(trueDist, arcDriver.distance(start, end), 1e-9);
+		arcDriver.buildLandmarks(4);
+		assertEquals(trueDist, arcDriver.routeDistance(arcDriver.route(start, end, RouteMode.ALT)), 1e-9,
+			"ALT route is not a shortest path");
+		arcDriver.buildContractionHierarchy();
+		assertEquals(trueDist, arcDriver.distance(start, end), 1e-9);
+	}
+
+	/**
+	 * Tests that A* finds the same routes as Dijkstra on a generated grid
+	 * while settling well under half as many vertices
+	 */
+	@Test
+	public void testAStarSettlesFewer(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("grid.graph");
+		GraphGenerator.main(new String[] {"grid", "20000", file.toString()});
+		GraphProcessor gridDriver = new GraphProcessor();
+		gridDriver.initialize(new FileInputStream(file.toFile()));
+		Random random = new Random(7);
+		long dijkstraSettled = 0;
+		long aStarSettled = 0;
+		for (int i = 0; i < 20; i++) {
+			Point start = gridDriver.getPoint(random.nextInt(20000));
+			Point end = gridDriver.getPoint(random.nextInt(20000));
+			if (start.equals(end)) {
+				continue;
+			}
+			double trueDist = gridDriver.routeDistance(gridDriver.route(start, end, RouteMode.DIJKSTRA));
+			dijkstraSettled += gridDriver.lastSettledCount();
+			assertEquals(trueDist, gridDriver.routeDistance(gridDriver.route(start, end, RouteMode.ASTAR)), 1e-9);
+			aStarSettled += gridDriver.lastSettledCount();
+		}
+		assertTrue(aStarSettled > 0 && aStarSettled < dijkstraSettled / 2,
+			"A* settled " + aStarSettled + " vertices, Dijkstra " + dijkstraSettled);
+	}
+
+	// writes a .graph of 400-edge paths from (45, -120) to (45, -60) bowing by up to 10 degrees
+	private static Path writeArcGraph(Path dir) throws IOException {
+		int[] bows = {0, 1, 2, 3, 4, 5, 6, 8, 10, -2, -4};
+		int segments = 400;
+		StringBuilder vertices = new StringBuilder("s 45.0 -120.0\nt 45.0 -60.0\n");
+		StringBuilder edges = new StringBuilder();
+		int count = 2;
+		for (int bow : bows) {
+			int previous = 0;
+			for (int i = 1; i < segments; i++) {
+				double lat = 45 + bow * Math.sin(Math.PI * i / segments);
+				double lon = -120 + 60.0 * i / segments;
+				vertices.append("v").append(count).append(' ').append(lat).append(' ').append(lon).append('\n');
+				edges.append(previous).append(' ').append(count).append('\n');
+				previous = count++;
+			}
+			edges.append(previous).append(" 1\n");
+		}
+		Path file = dir.resolve("arcs.graph");
+		Files.writeString(file, count + " " + bows.length * segments + "\n" + vertices + edges);
+		return file;
+	}
+
+	/**
+	 * Tests that distance matches the length of the shortest route, both
+	 * by searching and from hub labels
+	 */
+	@Test
+	public void testDistance() throws InvalidAlgorithmParameterException {
+		Point[][] pairs = new Point[][] {
+			{new Point(2, -1), new Point(1, 1)},
+			{new Point(2, 1), new Point(1, -1)},
+			{new Point(0, 0), new Point(-1, 0)}};
+		for (int labeled = 0; labeled < 2; labeled++) {
+			for (Point[] pair : pairs) {
+				double trueDist = simpleDriver.routeDistance(simpleDriver.route(pair[0], pair[1], RouteMode.DIJKSTRA));
+				assertEquals(trueDist, simpleDriver.distance(pair[0], pair[1]), 1e-4);
+				assertEquals(trueDist, simpleDriver.distance(pair[1], pair[0]), 1e-4);
+			}
+			simpleDriver.buildHubLabels();
+		}
+		assertEquals(0.0, simpleDriver.distance(new Point(2, 0), new Point(2, 0)));
+		assertThrows(InvalidAlgorithmParameterException.class,
+			() -> simpleDriver.distance(new Point(1, -1), new Point(-1, 1)));
+	}
+
+	/**
+	 * Tests that every entry of distanceMatrix agrees with distance, with
+	 * and without preprocessing, and that unconnected entries are infinite
+	 */
+	@Test
+	public void testDistanceMatrix() throws InvalidAlgorithmParameterException {
+		List<Point> sources = Arrays.asList(new Point(2, -1), new Point(1, 1), new Point(0, 0));
+		List<Point> targets = Arrays.asList(new Point(1, -1), new Point(2, 1), new Point(-1, 0), new Point(1, 1));
+		for (int stage = 0; stage < 3; stage++) {
+			double[][] matrix = simpleDriver.distanceMatrix(sources, targets);
+			assertEquals(sources.size(), matrix.length);
+			for (int i = 0; i < sources.size(); i++) {
+				assertEquals(targets.size(), matrix[i].length);
+				for (int j = 0; j < targets.size(); j++) {
+					if (simpleDriver.connected(sources.get(i), targets.get(j))) {
+						assertEquals(simpleDriver.distance(sources.get(i), targets.get(j)), matrix[i][j], 1e-4);
+					} else {
+						assertEquals(Double.POSITIVE_INFINITY, matrix[i][j]);
+					}
+				}
+			}
+			if (stage == 0) {
+				simpleDriver.buildContractionHierarchy();
+			} else {
+				simpleDriver.buildHubLabels();
+			}
+		}
+	}
+
+	/**
+	 * Tests single-source shortest path trees with and without a radius,
+	 * and the isochrone boundary
+	 */
+	@Test
+	public void testShortestPathTree() throws InvalidAlgorithmParameterException {
+		Point a = new Point(2, -1);
+		ShortestPathTree all = simpleDriver.shortestPathTree(a, Double.POSITIVE_INFINITY);
+		assertEquals(6, all.size());
+		for (Point p : Arrays.asList(new Point(2, 0), new Point(2, 1), new Point(1, 1))) {
+			int v = simpleDriver.getVertexId(p);
+			assertEquals(simpleDriver.distance(a, p), all.distance(v), 1e-4);
+			List<Point> path = new ArrayList<>();
+			for (int u : all.path(v)) {
+				path.add(simpleDriver.getPoint(u));
+			}
+			assertEquals(all.distance(v), simpleDriver.routeDistance(path), 1e-9);
+		}
+		assertFalse(all.reached(simpleDriver.getVertexId(new Point(0, 0))));
+
+		ShortestPathTree near = simpleDriver.shortestPathTree(a, 100);
+		assertEquals(3, near.size());
+		assertFalse(near.reached(simpleDriver.getVertexId(new Point(1, 0))));
+		assertEquals(new HashSet<>(Arrays.asList(new Point(2, 0), new Point(1, -1))), simpleDriver.isochrone(a, 100));
+	}
+
+	/**
+	 * Tests that routeAll returns the same routes as route, in input order,
+	 * with null for pairs that have no route
+	 */
+	@Test
+	public void testRouteAll() throws Exception {
+		List<Point[]> pairs = new ArrayList<>();
+		Point[] all = simpleCityLookup.values().toArray(new Point[0]);
+		for (Point a : all) {
+			for (Point b : all) {
+				pairs.add(new Point[] {a, b});
+			}
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<List<Point>> routes = simpleDriver.routeAll(pairs, executor);
+			assertEquals(pairs.size(), routes.size());
+			assertEquals(routes, simpleDriver.routeAll(pairs, executor, 2));
+			for (int i = 0; i < pairs.size(); i++) {
+				Point[] pair = pairs.get(i);
+				if (pair[0].equals(pair[1]) || !simpleDriver.connected(pair[0], pair[1])) {
+					assertNull(routes.get(i));
+				} else {
+					assertEquals(simpleDriver.route(pair[0], pair[1]), routes.get(i));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(0, simpleDriver.routeAll(new ArrayList<>()).size());
+
+		ThreadPoolExecutor cached = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+		try {
+			assertEquals(pairs.size(), simpleDriver.routeAll(pairs, cached).size());
+			assertTrue(cached.getLargestPoolSize() <= Runtime.getRuntime().availableProcessors(),
+				"An unbounded pool got " + cached.getLargestPoolSize() + " workers for " + pairs.size() + " pairs");
+		} finally {
+			cached.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that cached routes match searched ones in both directions and
+	 * that the cache stays within its limit
+	 */
+	@Test
+	public void testRouteCache() throws InvalidAlgorithmParameterException {
+		Point a = new Point(2, -1);
+		Point c = new Point(2, 1);
+		List<Point> expected = simpleDriver.route(a, c);
+		List<Point> reversed = new ArrayList<>(expected);
+		Collections.reverse(reversed);
+
+		simpleDriver.enableRouteCache(2, Long.MAX_VALUE);
+		RouteCache cache = simpleDriver.getRouteCache();
+		assertEquals(expected, simpleDriver.route(a, c));
+		assertEquals(0, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals(expected, simpleDriver.route(a, c));
+		assertEquals(0, simpleDriver.lastSettledCount());
+		assertEquals(reversed, simpleDriver.route(c, a));
+		assertEquals(simpleDriver.routeDistance(expected), simpleDriver.distance(c, a), 1e-9);
+		assertEquals(3, cache.hits());
+
+		simpleDriver.route(a, new Point(1, 0));
+		simpleDriver.route(a, new Point(1, 1));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.evictions());
+		simpleDriver.disableRouteCache();
+		assertNull(simpleDriver.getRouteCache());
+	}
+
+	/**
+	 * Tests that a query listener sees one set of statistics per query,
+	 * with search counters that agree with each other for routes
+	 */
+	@Test
+	public void testQueryStats() throws InvalidAlgorithmParameterException {
+		List<QueryStats> seen = Collections.synchronizedList(new ArrayList<>());
+		QueryHistograms histograms = new QueryHistograms();
+		simpleDriver.setQueryListener(stats -> {
+			seen.add(stats);
+			histograms.queryFinished(stats);
+		});
+		Point a = new Point(2, -1);
+		Point c = new Point(2, 1);
+		simpleDriver.setRouteMode(RouteMode.DIJKSTRA);
+		simpleDriver.route(a, c);
+		simpleDriver.connected(a, c);
+		simpleDriver.nearestPoint(new Point(2.1, -1.1));
+		simpleDriver.setRouteMode(RouteMode.BIDIRECTIONAL);
+		simpleDriver.routeAll(List.<Point[]>of(new Point[] {a, c}, new Point[] {a, a}));
+
+		assertEquals(5, seen.size());
+		QueryStats route = seen.get(0);
+		assertEquals(QueryStats.Kind.ROUTE, route.getKind());
+		assertEquals(simpleDriver.lastSettledCount(), route.getSettled());
+		assertEquals(route.getPops(), route.getSettled());
+		assertTrue(route.getPushes() >= route.getPops());
+		assertTrue(route.getRelaxed() >= route.getPushes() + route.getDecreases() - 1);
+		assertTrue(route.getMaxHeapSize() >= 1 && route.getMaxHeapSize() <= route.getPushes());
+		assertEquals(QueryStats.Kind.CONNECTED, seen.get(1).getKind());
+		assertEquals(QueryStats.Kind.NEAREST_POINT, seen.get(2).getKind());
+		assertEquals(0, seen.get(2).getSettled());
+
+		assertEquals(3, histograms.count(QueryStats.Kind.ROUTE));
+		assertEquals(1, histograms.count(QueryStats.Kind.CONNECTED));
+		long[] settled = histograms.histogram(QueryStats.Kind.ROUTE, QueryStats.Metric.SETTLED);
+		assertEquals(1, settled[0]);
+		assertEquals(3, Arrays.stream(settled).sum());
+		assertTrue(histograms.percentile(QueryStats.Kind.ROUTE, QueryStats.Metric.SETTLED, 1.0)
+				>= route.getSettled());
+		assertEquals(0, histograms.percentile(QueryStats.Kind.ROUTE, QueryStats.Metric.SETTLED, 0.3));
+
+		simpleDriver.setQueryListener(null);
+		simpleDriver.nearestPoint(a);
+		assertEquals(5, seen.size());
+	}
+
+	/**
+	 * Tests that a file large enough to be parsed in several chunks, when
+	 * more than one thread is available, reads the same as line by line
+	 */
+	@Test
+	public void testParseLargeFile(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("grid.graph");
+		GraphGenerator.main(new String[] {"grid", "60000", file.toString()});
+		Graph graph;
+		try (FileInputStream in = new FileInputStream(file.toFile())) {
+			graph = GraphParser.parse(in);
+		}
+
+		List<String> lines = Files.readAllLines(file);
+		String[] header = lines.get(0).split(" ");
+		int n = Integer.parseInt(header[0]);
+		int m = Integer.parseInt(header[1]);
+		assertEquals(n, graph.size());
+		assertEquals(2 * m, graph.arcCount());
+		for (int i = 0; i < n; i++) {
+			String[] vertex = lines.get(1 + i).split(" ");
+			assertEquals(new Point(Double.parseDouble(vertex[1]), Double.parseDouble(vertex[2])), graph.point(i));
+			assertEquals(vertex[0], graph.name(i));
+		}
+		for (int e = 0; e < m; e++) {
+			String[] edge = lines.get(1 + n + e).split(" ");
+			int u = Integer.parseInt(edge[0]);
+			int v = Integer.parseInt(edge[1]);
+			boolean found = false;
+			for (int a = graph.firstArc(u); a < graph.endArc(u); a++) {
+				found |= graph.target(a) == v;
+			}
+			assertTrue(found, "Edge " + u + " " + v + " is missing");
+		}
+	}
+
+	/**
+	 * Tests that initialize, route and nearestPoint emit Flight Recorder
+	 * events while a recording enables them
+	 */
+	@Test
+	public void testFlightRecorderEvents(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("graph.jfr");
+		try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+			recording.enable("graph.Initialize");
+			recording.enable("graph.Route");
+			recording.enable("graph.NearestPoint");
+			recording.start();
+			GraphProcessor driver = new GraphProcessor();
+			driver.initialize(new FileInputStream(simpleGraphFile));
+			driver.route(new Point(2, -1), new Point(1, 1));
+			driver.nearestPoint(new Point(2.1, -1.1));
+			recording.stop();
+			recording.dump(file);
+		}
+
+		Map<String, jdk.jfr.consumer.RecordedEvent> events = new HashMap<>();
+		for (jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(file)) {
+			events.put(event.getEventType().getName(), event);
+		}
+		assertEquals(new File(simpleGraphFile).length(), events.get("graph.Initialize").getLong("bytes"));
+		assertEquals(10, events.get("graph.Initialize").getInt("vertices"));
+		jdk.jfr.consumer.RecordedEvent route = events.get("graph.Route");
+		assertEquals(3, route.getInt("pathVertices"));
+		assertEquals(166.93, route.getDouble("pathMiles"), 0.01);
+		assertTrue(route.getInt("settled") > 0);
+		assertEquals("ASTAR", route.getString("mode"));
+		assertEquals(2, events.get("graph.NearestPoint").getDouble("nearestLat"), 0);
+	}
+
     /**
      * Tests that driver returns the distance along a given route represented as a List<Point> input
      * Tests only if .routeDistsance() is correct (i.e. can pass even if .route() is incorect)
@@ -109,7 +501,24 @@ public class TestSimpleGraphProcessor {
 			double routeDist = simpleDriver.routeDistance(routes.get(i));
 			assertTrue(inRange(routeDist, targetDists[i]),
 				"Your route distance is not within rounding error (+/- 0.03) of the actual route distance! This test is designed so that it passes if your .routeDistance() is correct, even if your .route() is incorrect");
+			int[] ids = routes.get(i).stream().mapToInt(simpleDriver::getVertexId).toArray();
+			assertEquals(routeDist, simpleDriver.routeDistance(ids), 1e-9);
+		}
+	}
+
+	/**
+	 * Tests that Point hashes agree with equals, including for -0.0, and
+	 * do not collide along a diagonal
+	 */
+	@Test
+	public void testPointHashCode() {
+		assertEquals(new Point(0.0, 0.0), new Point(-0.0, -0.0));
+		assertEquals(new Point(0.0, 0.0).hashCode(), new Point(-0.0, -0.0).hashCode());
+		Set<Integer> hashes = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			hashes.add(new Point(35 + i * 0.001, -80 - i * 0.001).hashCode());
 		}
+		assertEquals(1000, hashes.size());
 	}
 
     /**
@@ -125,6 +534,84 @@ public class TestSimpleGraphProcessor {
 		   "You mistakenly claim two points representing Durham NC and Raleigh NC's nearest points, respectively, are not connected. This test is designed if .connected() is correct, even if .nearestPoint() is faulty"); 
 	}
  
+	/**
+	 * Tests that a graph loaded from a binary snapshot answers queries
+	 * exactly like the graph parsed from the text .graph file
+	 */
+	@Test
+	public void testSnapshot(@TempDir Path dir) throws Exception {
+		Path snapshot = dir.resolve("simple.bgraph");
+		GraphSnapshot.write(GraphParser.parse(new FileInputStream(simpleGraphFile)), snapshot);
+		GraphProcessor snapshotDriver = new GraphProcessor();
+		snapshotDriver.initialize(new FileInputStream(snapshot.toFile()));
+
+		for (Point p : simpleCityLookup.values()) {
+			assertEquals(simpleDriver.nearestPoint(p), snapshotDriver.nearestPoint(p));
+			assertEquals(simpleDriver.nearestPoints(p, 4), snapshotDriver.nearestPoints(p, 4));
+			assertEquals(simpleDriver.connected(p, new Point(0, 0)), snapshotDriver.connected(p, new Point(0, 0)));
+		}
+		assertEquals(simpleDriver.route(new Point(2, -1), new Point(1, 1)),
+			snapshotDriver.route(new Point(2, -1), new Point(1, 1)));
+		assertFalse(snapshotDriver.connected(new Point(2, -1), new Point(-1, 1)));
+	}
+
+	/**
+	 * Tests that coordinates are stored as fixed point exactly when that
+	 * loses nothing, both after parsing and after a snapshot
+	 */
+	@Test
+	public void testFixedPointCoordinates(@TempDir Path dir) throws Exception {
+		Graph simple = GraphParser.parse(new FileInputStream(simpleGraphFile));
+		Graph arcs = GraphParser.parse(new FileInputStream(writeArcGraph(dir).toFile()));
+		assertTrue(simple.coordinates().isFixedPoint());
+		assertFalse(arcs.coordinates().isFixedPoint());
+		for (Graph graph : new Graph[] {simple, arcs}) {
+			Path snapshot = dir.resolve("copy.bgraph");
+			GraphSnapshot.write(graph, snapshot);
+			Graph copy = GraphSnapshot.load(snapshot);
+			assertEquals(graph.coordinates().isFixedPoint(), copy.coordinates().isFixedPoint());
+			for (int v = 0; v < graph.size(); v++) {
+				assertEquals(graph.point(v), copy.point(v));
+				assertEquals(v, copy.vertexOf(graph.point(v)));
+			}
+			assertEquals(graph.index().nearest(1.9, -0.8), copy.index().nearest(1.9, -0.8));
+		}
+		assertEquals(new Point(-1.0, 1.0), simple.point(simple.size() - 1));
+	}
+
+	/**
+	 * Tests that preprocessed data only loads into the graph it was built
+	 * from, not into another graph of the same shape
+	 */
+	@Test
+	public void testPreprocessedMismatch(@TempDir Path dir) throws Exception {
+		Path moved = dir.resolve("moved.graph");
+		Files.writeString(moved, Files.readString(Path.of(simpleGraphFile)).replace("A 2.0 -1.0", "A 2.5 -1.0"));
+		GraphProcessor movedDriver = new GraphProcessor();
+		movedDriver.initialize(new FileInputStream(moved.toFile()));
+
+		Path hierarchy = dir.resolve("simple.ch");
+		simpleDriver.buildContractionHierarchy();
+		simpleDriver.saveContractionHierarchy(hierarchy.toString());
+		simpleDriver.loadContractionHierarchy(new FileInputStream(hierarchy.toFile()));
+		assertThrows(IOException.class,
+			() -> movedDriver.loadContractionHierarchy(new FileInputStream(hierarchy.toFile())));
+
+		Path landmarks = dir.resolve("simple.landmarks");
+		simpleDriver.buildLandmarks(2);
+		simpleDriver.saveLandmarks(landmarks.toString());
+		simpleDriver.loadLandmarks(new FileInputStream(landmarks.toFile()));
+		assertThrows(IOException.class,
+			() -> movedDriver.loadLandmarks(new FileInputStream(landmarks.toFile())));
+
+		Path labels = dir.resolve("simple.hub");
+		simpleDriver.buildHubLabels();
+		simpleDriver.saveHubLabels(labels.toString());
+		simpleDriver.loadHubLabels(new FileInputStream(labels.toFile()));
+		assertThrows(IOException.class,
+			() -> movedDriver.loadHubLabels(new FileInputStream(labels.toFile())));
+	}
+ 
     // helper method to check if a point's distance to input is within 3% of the true nearest point's distance to input
 	private static boolean inRange(double resPathDist, double truePathDist) {
 		return (resPathDist > 0.97 * truePathDist && resPathDist < 1.03 * truePathDist);